@@ -7,6 +7,7 @@ import tester.Tester;
 
 import java.awt.*;
 import java.awt.geom.Point2D;
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
@@ -45,54 +46,75 @@ public class Agent {
 
         //create a initial state from the problrmSpec
         State s = new State(ps);
-        List<State> path = new LinkedList<>();
+        //the parts of the path in order, written one after another so the robot paths are never joined in memory
+        List<List<State>> path = new ArrayList<>();
         //the length of robot
         Double robotLength = ps.getRobotWidth();
         //get the initial and goal robot config from problemSpec
         RobotConfig robotInit = ps.getInitialRobotConfig();
 
         //GET THE PAHT OF MOVINGBOXES states
-        Astar astar = new Astar(ps);
-        List<LinkedList<State>> boxStates= astar.getStateList();
-
-        for(LinkedList<State> ls : boxStates) {
-            ls.getLast().setProblemSpec(ps);
+        //-Dastar.mode=jps, hierarchical or bidirectional for another box search, astar by default
+        //-Dastar.concurrent=true to plan the boxes in parallel
+        Astar astar = new Astar(ps, Astar.Mode.valueOf(System.getProperty("astar.mode", "astar").toUpperCase()),
+                Boolean.getBoolean("astar.concurrent"));
+        List<List<State>> boxStates= astar.getStateList();
+
+        //no box could be moved to its goal, so there is no box to walk the robot to
+        if (boxStates == null || boxStates.isEmpty()) {
+            System.out.println("No Solution: no path found for any moving box");
+            return;
         }
 
-        RobotConfig robotGoal = boxStates.get(0).getFirst().getRobot();
+        RobotConfig robotGoal = boxStates.get(0).get(0).getRobot();
         System.out.println(robotInit);
         System.out.println(robotGoal);
 
         PRM prm = new PRM(ps, s, 500, 10, robotInit, robotGoal);
-        HashMap<RobotConfig, Set<RobotConfig>> sg = prm.buildMap();
+        prm.setLazy(true);
+        //-Dsampler=halton or sobol for low-discrepancy vertices, -Dseed=n for a reproducible random roadmap
+        //reuse the static part of the roadmap between runs, e.g. -Dprm.cache=prm-cache
+        //the cache keeps a roadmap per seed, so with the cache the seed is 0 unless it is given
+        String cache = System.getProperty("prm.cache");
+        prm.setSampler(Sampler.create(System.getProperty("sampler", "random"), 3,
+                Long.getLong("seed", cache != null ? 0 : System.nanoTime())));
+        if (cache != null) {
+            prm.setCacheDirectory(new File(cache));
+        }
+        Roadmap sg = prm.buildMap();
 
         //check if the path exists
-        if(prm.BFS(sg, robotInit,robotGoal) != null) {
-            path = prm.BFS(sg,robotInit,robotGoal);
+        List<State> firstPath = prm.shortestPath(sg, robotInit, robotGoal);
+        if(firstPath != null) {
+            path.add(firstPath);
         } else {
             System.out.println("No Solution from init to 1st box");
         }
 
         // the state list of boxes
         if (boxStates.size()  == 1 ) {
-            path.addAll(boxStates.get(0));
+            path.add(boxStates.get(0));
         } else {
             for (int i = 0; i < boxStates.size() -1 ; i++) {
                 //add state path of ith box
-                path.addAll(boxStates.get(i));
+                path.add(boxStates.get(i));
 
 //            //calculate the path from the box to next
 //            robotInit = boxStates.get(i).getLast().getRobot();
 //            robotGoal = boxStates.get(i + 1).getFirst().getRobot();
 //            System.out.println(robotInit);
 //            System.out.println(robotGoal);
-                PRM prm2 = new PRM(ps, boxStates.get(i).getLast(), 500, 10, boxStates.get(i).getLast().getRobot(), boxStates.get(i+1).getFirst().getRobot());
-                HashMap<RobotConfig, Set<RobotConfig>> roadmap = prm2.buildMap();
+                //the box path is a view, so its last state is built here once
+                State boxEnd = boxStates.get(i).get(boxStates.get(i).size() - 1);
+                boxEnd.setProblemSpec(ps);
+                //reuse the roadmap, it is only repaired where the box moved
+                prm.updateState(boxEnd);
 
                 //check if the path exists
-                if(prm2.BFS(roadmap,  boxStates.get(i).getLast().getRobot(), boxStates.get(i+1).getFirst().getRobot()) != null) {
-                    path.addAll(prm2.BFS(roadmap, boxStates.get(i).getLast().getRobot(), boxStates.get(i+1).getFirst().getRobot()));
-                    path.addAll(boxStates.get(i+1));
+                List<State> transit = prm.query(boxEnd.getRobot(), boxStates.get(i+1).get(0).getRobot());
+                if(transit != null) {
+                    path.add(transit);
+                    path.add(boxStates.get(i+1));
                 } else {
                     System.out.println("No Solution from " + i + "th to"+ i+1+"th box");
                 }
@@ -108,7 +130,7 @@ public class Agent {
 //        }
 
         try {
-            writer.writePath(path, args[1]);
+            writer.writePaths(path, args[1]);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -4,315 +4,1360 @@ import problem.*;
 import tester.Tester;
 
 import java.awt.geom.Point2D;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
  * Astart search algorithm for searching shortest path in the state graph.
+ * Positions, sizes and costs are kept in FixedPoint micro-units during the search
+ * and only converted to doubles when building the output path.
  */
 public class Astar {
+    /**
+     * Search strategies for planning the box paths. ASTAR is the default and the only mode whose output
+     * is the same as the original search, the others are opt-in and may return a different path.
+     */
+    public enum Mode {
+        /** A* over every lattice point */
+        ASTAR,
+        /**
+         * Jump Point Search, only expands the jump points of the uniform push lattice. Its paths have as few
+         * pushes as ASTAR's or fewer, but ties between equally short paths are broken differently,
+         * so the output is not the same as ASTAR's.
+         */
+        JPS,
+        /** A* over a coarse grid first, then A* over the lattice inside a corridor around the coarse path */
+        HIERARCHICAL,
+        /** A* from the start and backwards from the goal at the same time, meeting in the middle */
+        BIDIRECTIONAL
+    }
+
     // Class Variables //
-    private final double STEP_SIZE = Tester.MAX_BASE_STEP;
-    private final DecimalFormat DECIMAL = new DecimalFormat("0.###");
+    // Push directions in the order children are generated
+    private static final String[] DIRECTIONS = BoxPath.DIRECTIONS;
+    private final int STEP_SIZE = FixedPoint.toMicro(Tester.MAX_BASE_STEP);
+    // Number of lattice points along each axis of the 1x1 workspace
+    private final int SIDE = FixedPoint.SCALE / STEP_SIZE + 1;
     private List<Point2D> goalList = new ArrayList<>();
     private List<Box> mvBox = new ArrayList<>();
     private List<Box> movedBox =  new ArrayList<>();
     private List<Box> mvObst = new ArrayList<>();
-    private List<StaticObstacle> staticObst = new ArrayList<>();
-    private Point2D start;
-    private Point2D end;
-    private double width;
-    private double robotWidth;
-    private List<Node> opened = new ArrayList<>();
-    private List<Node> closed = new ArrayList<>();
-    private List<LinkedList<Point2D>> mvBoxPaths =  new ArrayList<>();
-    private List<LinkedList<RobotConfig>> robotPaths = new ArrayList<>();
-    private List<List<List<Box>>> allBoxCoords = new ArrayList<>();
+    // Rectangles {x, y, width, height} in micro-units, parallel to the lists above
+    private List<int[]> mvBoxRects = new ArrayList<>();
+    private List<int[]> movedBoxRects = new ArrayList<>();
+    private List<int[]> mvObstRects = new ArrayList<>();
+    private List<int[]> staticRects = new ArrayList<>();
+    // Occupancy rasters of all obstacles above, one per box size checked
+    private List<OccupancyGrid> grids = new ArrayList<>();
+    // Raster for the box being pushed and for the room the robot needs around it
+    private OccupancyGrid boxGrid;
+    private OccupancyGrid roomGrid;
+    private int startX;
+    private int startY;
+    private int endX;
+    private int endY;
+    private int width;
+    private int robotWidth;
+    // Opened and closed sets of the search, allocated by the first search
+    private IndexedHeap<Node> opened;
+    private BitSet closed;
+    // Path of every box in order, null where no path was found
+    private List<BoxPath> boxPaths = new ArrayList<>();
+    private Mode mode;
+    // JPS flags per lattice point, see getCellInfo
+    private byte[] cellInfo;
+    private static final int KNOWN = 1;
+    private static final int BLOCKED = 2;
+    // The robot lacks room to turn between right and up (either way), right and down, ...
+    private static final int NO_ROOM_RU = 4;
+    private static final int NO_ROOM_RD = 8;
+    private static final int NO_ROOM_LU = 16;
+    private static final int NO_ROOM_LD = 32;
+    // JPS memo of horizontal runs per lattice point: 0 unknown, 1 hits an obstacle, 2 reaches a jump point
+    private byte[] rightRuns;
+    private byte[] leftRuns;
+    // Hierarchical mode: lattice points along each side of a coarse cell (0.01)
+    private static final int COARSE_STEPS = 10;
+    private final int COARSE_SIDE = (SIDE + COARSE_STEPS - 1) / COARSE_STEPS;
+    // Corridor half widths in coarse cells, tried in turn before searching the whole lattice
+    private static final int[] CORRIDOR_MARGINS = {1, 3, 9};
+    // Coarse cell flags, see getCoarseInfo
+    private byte[] coarseCells;
+    private static final int COARSE_OPEN = 2;
+    // Coarse cells the lattice search may enter, null for no restriction
+    private BitSet corridor;
+    // Bidirectional mode: opened and closed sets of the backward search from the goal
+    private IndexedHeap<Node> backOpened;
+    private BitSet backClosed;
+    // Bidirectional mode: best node of each search at every lattice point, opened or closed
+    private Node[] foreReached;
+    private Node[] backReached;
+    // Number of nodes taken off the opened set over all box searches
+    private int expanded = 0;
 
     // Constructors //
     public Astar(ProblemSpec ps) {
+        this(ps, Mode.ASTAR);
+    }
+
+    /**
+     * Plan the box paths with the given search strategy
+     * @param ps the problem to solve
+     * @param mode the search strategy used for every box
+     */
+    public Astar(ProblemSpec ps, Mode mode) {
+        this(ps, mode, false);
+    }
+
+    /**
+     * Plan the box paths with the given search strategy
+     * @param ps the problem to solve
+     * @param mode the search strategy used for every box
+     * @param concurrent true to plan the boxes in parallel on the common fork-join pool
+     */
+    public Astar(ProblemSpec ps, Mode mode, boolean concurrent) {
+        this.mode = mode;
         setMvBox(ps.getMovingBoxes());
         setMvObst(ps.getMovingObstacles());
         setStaticObst(ps.getStaticObstacles());
         setGoalList(ps.getMovingBoxEndPositions());
-        setPath();
+        if (concurrent) {
+            setPathConcurrently();
+        } else {
+            setPath();
+        }
+    }
+
+    /**
+     * A planner for one box of owner. The boxes before it are at their goals unless they failed and the boxes
+     * after it are at their starts, as setPath would leave them if only the failed boxes missed their goals.
+     * @param owner the planner of the whole problem, for its mode and obstacles
+     * @param boxes the moving boxes in order
+     * @param rects the rectangles of the moving boxes
+     * @param goals the goals of the moving boxes
+     * @param failed the boxes before it that stay at their starts
+     * @param box index of the box to plan
+     */
+    private Astar(Astar owner, List<Box> boxes, List<int[]> rects, List<Point2D> goals, BitSet failed, int box) {
+        mode = owner.mode;
+        mvObst = owner.mvObst;
+        mvObstRects = owner.mvObstRects;
+        staticRects = owner.staticRects;
+        for (int i = 0; i < box; i++) {
+            int[] rect = rects.get(i);
+            if (failed.get(i)) {
+                placeMovedBox(rect[0], rect[1], rect[2]);
+            } else {
+                Point2D goal = goals.get(i);
+                placeMovedBox(FixedPoint.toMicro(goal.getX()), FixedPoint.toMicro(goal.getY()), rect[2]);
+            }
+        }
+        mvBox.addAll(boxes.subList(box, boxes.size()));
+        mvBoxRects.addAll(rects.subList(box, rects.size()));
+        goalList.add(goals.get(box));
+        initBoxData();
     }
 
     // Methods //
     private void setMvBox(List<Box> mvBoxList) {
         for (Box box : mvBoxList) {
-            Point2D point = new Point2D.Double(formatDouble(box.getPos().getX()), formatDouble(box.getPos().getY()));
-            Box parsedBox = new MovingBox(point, formatDouble(box.getWidth()));
+            Point2D point = new Point2D.Double(FixedPoint.format3(box.getPos().getX())
+                    , FixedPoint.format3(box.getPos().getY()));
+            Box parsedBox = new MovingBox(point, FixedPoint.format3(box.getWidth()));
             mvBox.add(parsedBox);
+            mvBoxRects.add(toRect(parsedBox));
         }
     }
 
     private void setMvObst(List<Box> mvObstList) {
         for (Box obst : mvObstList) {
-            Point2D point = new Point2D.Double(formatDouble(obst.getPos().getX()), formatDouble(obst.getPos().getY()));
-            Box parsedBox = new MovingObstacle(point, formatDouble(obst.getWidth()));
+            Point2D point = new Point2D.Double(FixedPoint.format3(obst.getPos().getX())
+                    , FixedPoint.format3(obst.getPos().getY()));
+            Box parsedBox = new MovingObstacle(point, FixedPoint.format3(obst.getWidth()));
             mvObst.add(parsedBox);
+            mvObstRects.add(toRect(parsedBox));
         }
     }
 
     private void setStaticObst(List<StaticObstacle> staticObstList) {
         for (StaticObstacle so : staticObstList) {
-            StaticObstacle parsedBox = new StaticObstacle(formatDouble(so.getRect().getX())
-                    , formatDouble(so.getRect().getY()), formatDouble(so.getRect().getWidth())
-                    , formatDouble(so.getRect().getHeight()));
-            staticObst.add(parsedBox);
+            int[] rect = {FixedPoint.round3(so.getRect().getX()), FixedPoint.round3(so.getRect().getY())
+                    , FixedPoint.round3(so.getRect().getWidth()), FixedPoint.round3(so.getRect().getHeight())};
+            staticRects.add(rect);
         }
     }
 
     private void setGoalList(List<Point2D> list) {
         for (Point2D point : list) {
-            Point2D parsedPoint = new Point2D.Double(formatDouble(point.getX()), formatDouble(point.getY()));
+            Point2D parsedPoint = new Point2D.Double(FixedPoint.format3(point.getX())
+                    , FixedPoint.format3(point.getY()));
             goalList.add(parsedPoint);
         }
     }
 
+    /**
+     * Convert a box to a rectangle {x, y, width, height} in micro-units
+     * @param box the box to convert
+     * @return the rectangle of the box rounded to 3 decimal places
+     */
+    private int[] toRect(Box box) {
+        int size = FixedPoint.round3(box.getWidth());
+        return new int[] {FixedPoint.round3(box.getPos().getX()), FixedPoint.round3(box.getPos().getY())
+                , size, size};
+    }
+
     private void initBoxData() {
+        selectBox();
+        useGrids();
+    }
+
+    /**
+     * Take the next box and its goal off the lists as the box to plan
+     */
+    private void selectBox() {
         Box box = mvBox.remove(0);
+        int[] rect = mvBoxRects.remove(0);
+        for (OccupancyGrid grid : grids) {
+            grid.remove(rect);
+        }
         ////System.out.println("Box selected: " + box.getPos().toString());
-        start = box.getPos();
-        width = box.getWidth();
+        startX = FixedPoint.toMicro(box.getPos().getX());
+        startY = FixedPoint.toMicro(box.getPos().getY());
+        width = FixedPoint.toMicro(box.getWidth());
         robotWidth = width;
-        end = goalList.remove(0);
+        Point2D end = goalList.remove(0);
+        endX = FixedPoint.toMicro(end.getX());
+        endY = FixedPoint.toMicro(end.getY());
         ////System.out.println("Box goal: " + end.toString());
+    }
 
-        Node root = new Node(start, null);
-        opened.add(root);
+    /**
+     * Select the rasters of the box to plan, building the ones no box has used yet
+     */
+    private void useGrids() {
+        boxGrid = getGrid(width);
+        roomGrid = getGrid(FixedPoint.addHalf(0, robotWidth));
     }
 
-    private void updateMovedBox(boolean bool) {
-        if (bool) {
-            Box box = new MovingBox(end, width);
-            movedBox.add(box);
+    /**
+     * Start a new search of the current box from its start position
+     */
+    private void openRoot() {
+        if (opened == null) {
+            opened = new IndexedHeap<>(SIDE * SIDE);
+            closed = new BitSet(SIDE * SIDE);
         } else {
-            Box box = new MovingBox(start, width);
-            movedBox.add(box);
+            opened.clear();
+            closed.clear();
+        }
+        Node root = new Node(startX, startY, null);
+        opened.push(root.getIndex(), root.getF(), root);
+    }
+
+    private void updateMovedBox(boolean bool) {
+        int x = bool ? endX : startX;
+        int y = bool ? endY : startY;
+        placeMovedBox(x, y, width);
+        if (opened != null) {
+            opened.clear();
+            closed.clear();
+        }
+    }
+
+    /**
+     * Add a box that has been planned to the obstacles of the boxes after it
+     * @param x bottom left x in micro-units
+     * @param y bottom left y in micro-units
+     * @param size width of the box in micro-units
+     */
+    private void placeMovedBox(int x, int y, int size) {
+        Point2D point = new Point2D.Double(FixedPoint.toDouble(x), FixedPoint.toDouble(y));
+        movedBox.add(new MovingBox(point, FixedPoint.toDouble(size)));
+        int[] rect = {x, y, size, size};
+        movedBoxRects.add(rect);
+        for (OccupancyGrid grid : grids) {
+            grid.add(rect);
         }
-        opened.clear();
-        closed.clear();
     }
 
     private void setPath() {
         while (!mvBox.isEmpty()) {
             initBoxData();
-            LinkedList<Point2D> path = pathSearch();
-            mvBoxPaths.add(path);
-            if (path != null) {
-                ////System.out.println("path exists");
-                updateMovedBox(true);
+            planBox();
+        }
+    }
+
+    /**
+     * Search a path for the box selected by initBoxData and record the result
+     */
+    private void planBox() {
+        openRoot();
+        BoxPath path;
+        if (mode == Mode.JPS) {
+            path = jumpPointSearch();
+        } else if (mode == Mode.HIERARCHICAL) {
+            path = hierarchicalSearch();
+        } else if (mode == Mode.BIDIRECTIONAL) {
+            path = bidirectionalSearch();
+        } else {
+            path = pathSearch();
+        }
+        acceptPath(path);
+    }
+
+    /**
+     * Record the path of the box selected by initBoxData and move the box to where it ends up
+     * @param path the box path, null if there is none
+     */
+    private void acceptPath(BoxPath path) {
+        boxPaths.add(path);
+        if (path != null) {
+            ////System.out.println("path exists");
+            updateMovedBox(true);
+        } else {
+            updateMovedBox(false);
+            ////System.out.println("path does not exist");
+        }
+    }
+
+    /**
+     * Plan the boxes in parallel. Each box is planned on its own against the placement setPath would give it
+     * if every box before it that has not failed yet reached its goal. The plans are then taken in box order
+     * while the boxes are moved the same way setPath moves them, and only the rasters those moves need are kept
+     * up to date here. A plan made with the failures as they turned out is kept as it is, which is what setPath
+     * would find. When a box fails, the plans of the later boxes that have not started are cancelled and
+     * submitted again with the box at its start. A plan that was already under way is only checked again where
+     * its swept area overlaps a box that failed after it started, and the box is planned again here if the path
+     * is no longer valid or if it found none. With no failures every plan is kept and the result is the same as
+     * setPath. A task only hands back its path and expanded node count, so the search sets and rasters of its
+     * planner are dropped as soon as the box is planned.
+     */
+    private void setPathConcurrently() {
+        final List<Box> boxes = new ArrayList<>(mvBox);
+        final List<int[]> rects = new ArrayList<>(mvBoxRects);
+        final List<Point2D> goals = new ArrayList<>(goalList);
+        int count = boxes.size();
+        BitSet failed = new BitSet(count);
+        List<ForkJoinTask<Plan>> tasks = new ArrayList<>();
+        List<AtomicBoolean> started = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            started.add(new AtomicBoolean());
+            tasks.add(submitPlan(boxes, rects, goals, failed, i, started.get(i)));
+        }
+
+        for (int i = 0; i < count; i++) {
+            selectBox();
+            Plan plan = tasks.get(i).join();
+            expanded += plan.expanded;
+            BoxPath path = plan.path;
+            if (plan.failed.equals(failed)) {
+                acceptPath(path);
+            } else if (path != null && !conflicts(path, plan.failed, failed, rects)) {
+                acceptPath(path.withOtherBoxes(movedBox, mvBox));
             } else {
-                updateMovedBox(false);
-                ////System.out.println("path does not exist");
+                useGrids();
+                if (path != null && isValidPath(path)) {
+                    acceptPath(path.withOtherBoxes(movedBox, mvBox));
+                } else {
+                    planBox();
+                }
+            }
+            if (boxPaths.get(i) == null) {
+                failed.set(i);
+                for (int j = i + 1; j < count; j++) {
+                    // Take back a task that has not started, it would plan with this box at its goal
+                    if (started.get(j).compareAndSet(false, true)) {
+                        tasks.get(j).cancel(false);
+                        started.set(j, new AtomicBoolean());
+                        tasks.set(j, submitPlan(boxes, rects, goals, failed, j, started.get(j)));
+                    }
+                }
             }
         }
     }
 
-    private LinkedList<Point2D> pathSearch() {
-        while (!opened.isEmpty()) {
-            ////System.out.println("# in opened: " + opened.size());
-            // Get the node with the lowest F-Cost
-            Node q = null;
-            for (Node n : opened) {
-                ////System.out.println(n.getCurrPos().toString() + " has F: " + n.getF());
-                if (q == null) {
-                    q = n;
-                    ////System.out.println("default node selection: " + q.getCurrPos().toString());
-                } else if (n.getF() <= q.getF()) {
-                    q = n;
-                    ////System.out.println("replaced default with: " + q.getCurrPos().toString());
+    /**
+     * Plan one box on the common fork-join pool
+     * @param failed the boxes before it that stay at their starts, copied for the task
+     * @param started set by the task when it starts, a task finding it already set plans nothing
+     * @return the task, its plan is null if it was taken back before it started
+     */
+    private ForkJoinTask<Plan> submitPlan(List<Box> boxes, List<int[]> rects, List<Point2D> goals, BitSet failed,
+                                          int box, AtomicBoolean started) {
+        final BitSet assumed = (BitSet) failed.clone();
+        return ForkJoinPool.commonPool().submit(() -> {
+            if (!started.compareAndSet(false, true)) {
+                return null;
+            }
+            Astar planner = new Astar(this, boxes, rects, goals, assumed, box);
+            planner.planBox();
+            return new Plan(planner.boxPaths.get(0), planner.expanded, assumed);
+        });
+    }
+
+    /**
+     * Check if a box that failed after a path was planned may be in its way. The path was planned with that box
+     * at its goal, so only its start can block the path.
+     * @param path the box path
+     * @param assumed the boxes the path was planned to avoid at their starts
+     * @param failed the boxes that are at their starts now
+     * @param rects the start rectangles of the moving boxes
+     * @return true if the swept area of the path overlaps a box that failed since it was planned
+     */
+    private boolean conflicts(BoxPath path, BitSet assumed, BitSet failed, List<int[]> rects) {
+        for (int i = failed.nextSetBit(0); i >= 0; i = failed.nextSetBit(i + 1)) {
+            if (!assumed.get(i) && sweptOverlaps(path, rects.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a rectangle overlaps the area a box path sweeps, the box positions on the way grown by the
+     * half width squares the robot needs to turn around the box
+     * @param path the box path of the box selected by initBoxData
+     * @param rect rectangle {x, y, width, height} in micro-units
+     * @return true if the rectangle overlaps or touches the swept area
+     */
+    private boolean sweptOverlaps(BoxPath path, int[] rect) {
+        int x = path.getStartX();
+        int y = path.getStartY();
+        int minX = x;
+        int minY = y;
+        int maxX = x;
+        int maxY = y;
+        for (int i = 0; i < path.size() - 1; i++) {
+            x += path.getStepX(i);
+            y += path.getStepY(i);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        int margin = width / 2;
+        return rect[0] <= maxX + width + margin && minX - margin <= rect[0] + rect[2]
+                && rect[1] <= maxY + width + margin && minY - margin <= rect[1] + rect[3];
+    }
+
+    /**
+     * Check a box path against the current obstacles with the same tests the searches use
+     * @param path the box path from start to end
+     * @return true if every position on the way is free and the robot has the room for every turn
+     */
+    private boolean isValidPath(BoxPath path) {
+        String parentDir = null;
+        int x = path.getStartX();
+        int y = path.getStartY();
+        for (int i = 0; i < path.size() - 1; i++) {
+            String dir = path.getDirection(i);
+            x += path.getStepX(i);
+            y += path.getStepY(i);
+            if (x != endX || y != endY) {
+                if (boxGrid.isBlocked(x, y) || (parentDir != null && noRoom(x, y, parentDir, dir))) {
+                    return false;
                 }
             }
-            ////System.out.println("node selected: " + q.getCurrPos().toString());
-            // Remove node from opened list
-            opened.remove(q);
+            parentDir = dir;
+        }
+        return true;
+    }
 
-            // Get children of q
-            List<Node> list = q.getChildren();
-            ////System.out.println("child U: " + list.get(0).getCurrPos().toString());
-            ////System.out.println("child D: " + list.get(1).getCurrPos().toString());
-            ////System.out.println("child L: " + list.get(2).getCurrPos().toString());
-            ////System.out.println("child R: " + list.get(3).getCurrPos().toString());
+    private BoxPath pathSearch() {
+        while (!opened.isEmpty()) {
+            ////System.out.println("# in opened: " + opened.size());
+            // Get and remove the node with the lowest F-Cost,
+            // ties go to the most recently opened node
+            Node q = opened.pop();
+            expanded++;
+            ////System.out.println("node selected: " + q.getCurrPos().toString());
 
-            // For each child,
+            // For each push out of q,
             // 1) check is goal,
-            // 2) if child is already on openedList,
-            // 3) if child is already in closedList under different parent and has lower F
-            // 4) check if the point is not an obstacle
-            // 5) check if robot has space to move
-            for (Node n : list) {
+            // 2) check if the point is not an obstacle
+            // 3) check if robot has space to move
+            // 4) if the point is already in closedList,
+            // 5) if the point is already on openedList with a lower or equal G,
+            // a node is only built for a push that passes every check,
+            // and it replaces an opened node with a higher G (decrease-key)
+            for (String dir : DIRECTIONS) {
+                int x = q.getX() + stepX(dir);
+                int y = q.getY() + stepY(dir);
                 // Check if node is goal
-                if (n.getCurrPos().equals(end)) {
-                    Node nodeCheck = n;
-                    LinkedList<Point2D> path = new LinkedList<>();
-                    LinkedList<RobotConfig> roboPath = new LinkedList<>();
-                    List<List<Box>> listListBox = new ArrayList<>();
-                    do {
-                        Point2D point = new Point2D.Double(formatDouble(nodeCheck.getCurrPos().getX())
-                                , formatDouble(nodeCheck.getCurrPos().getY()));
-
-                        List<Box> boxList = new ArrayList<>();
-                        boxList.addAll(movedBox);
-                        boxList.add(new MovingBox(point, formatDouble(width)));
-                        boxList.addAll(mvBox);
-
-                        roboPath.addFirst(getRobotPushConfig(nodeCheck));
-                        path.addFirst(nodeCheck.getCurrPos());
-                        listListBox.add(boxList);
-
-
-
-
-                        nodeCheck = nodeCheck.getParent();
-                    } while (nodeCheck != null);
-                    Collections.reverse(listListBox);
-                    allBoxCoords.add(listListBox);
-                    robotPaths.add(roboPath);
-                    return path;
-                } else if (!opened.contains(n) && !closed.contains(n) && !isMvBox(n.currBox)
-                        && !isMvObst(n.currBox) && !isStaticObst(n.currBox) && !isOutOfBounds(n.currBox)
-                        && !n.hasNoRoom()) {
-                    ////System.out.println("child: " + n.getCurrPos().toString());
-                    ////System.out.println("in closed: " + n.inClosed());
+                if (x == endX && y == endY) {
+                    Node n = new Node(x, y, q);
+                    n.setDirection(dir);
+                    return buildPath(n);
+                } else if (canPush(q, x, y, dir) && inCorridor(latticeIndex(x, y))
+                        && isImprovement(latticeIndex(x, y), q.getG() + STEP_SIZE, opened, closed)) {
+                    Node n = new Node(x, y, q);
+                    n.setDirection(dir);
                     ////System.out.println("added to opened: " + n.getCurrPos().toString());
-                    opened.add(n);
+                    addToOpened(n);
                 }
                 ////System.out.println("node skipped: " + n.getCurrPos().toString());
             }
-            closed.add(q);
+            closed.set(q.getIndex());
             ////System.out.println("node added to closed: " + q.getCurrPos().toString());
-            ////System.out.println("# in closed: " + closed.size());
         }
-        allBoxCoords.add(null);
-        robotPaths.add(null);
         return null;
     }
 
-    public List<LinkedList<State>> getStateList() {
-        List<LinkedList<State>> allStatePaths = new ArrayList<>();
-        int counter1 = 0;
-        for (List<List<Box>> listListBox : allBoxCoords) {
-            LinkedList<State> statePath = new LinkedList<>();
-            int counter2 = 0;
-            if (listListBox == null) {
-                counter1++;
-                continue;
+    /**
+     * Coarse-to-fine search. A* first runs over coarse cells of COARSE_STEPS x COARSE_STEPS lattice points.
+     * A cell keeps the feasibility of its lattice points: it is open if any of them is free, and it allows a
+     * kind of turn if any free one has the room for it, so the coarse path only turns where the box can.
+     * The lattice search then only enters cells within a margin of the coarse path, and the margin is widened
+     * (up to the whole lattice) if the corridor turns out too narrow. The whole lattice is also searched when
+     * the coarse search finds no path. Cells are only evaluated when the coarse search reaches them, so the
+     * work follows the path length rather than the free area.
+     * @return the box path from start to end, null if there is none
+     */
+    private BoxPath hierarchicalSearch() {
+        if (coarseCells == null) {
+            coarseCells = new byte[COARSE_SIDE * COARSE_SIDE];
+        } else {
+            Arrays.fill(coarseCells, (byte) 0);
+        }
+        List<Integer> coarsePath = coarseSearch();
+        if (coarsePath == null) {
+            // A cell only allows the turns one of its points has room for, but the box can turn more than once
+            // within a cell, so the lattice may still have a path the coarse search missed
+            return pathSearch();
+        }
+        BoxPath path = null;
+        for (int margin : CORRIDOR_MARGINS) {
+            corridor = getCorridor(coarsePath, margin);
+            path = pathSearch();
+            if (path != null) {
+                break;
             }
-            for (List<Box> boxList : listListBox) {
-                RobotConfig rc = robotPaths.get(counter1).get(counter2);
-                State state = new State(rc, boxList, mvObst);
-                statePath.add(state);
-                counter2++;
+            openRoot();
+        }
+        if (path == null) {
+            corridor = null;
+            path = pathSearch();
+        }
+        corridor = null;
+        return path;
+    }
+
+    /**
+     * A* over the coarse cells from the cell of the start to the cell of the goal. A coarse state is a cell
+     * and the direction it was entered in, so turns can be checked against the cell the box turns in.
+     * @return the coarse cell indices of the path, start first, null if the goal cell can not be reached
+     */
+    private List<Integer> coarseSearch() {
+        int start = coarseIndex(latticeIndex(startX, startY));
+        int goal = coarseIndex(latticeIndex(endX, endY));
+        if (start < 0 || goal < 0) {
+            return null;
+        }
+        // order = [u, d, l, r]
+        int[] rowSteps = {-1, 1, 0, 0};
+        int[] colSteps = {0, 0, -1, 1};
+        int states = COARSE_SIDE * COARSE_SIDE * rowSteps.length;
+        IndexedHeap<Integer> coarseOpened = new IndexedHeap<>(states);
+        BitSet coarseClosed = new BitSet(states);
+        int[] gCosts = new int[states];
+        int[] parents = new int[states];
+        Arrays.fill(gCosts, Integer.MAX_VALUE);
+        // The first push may go any way, so the start cell counts as entered in every direction
+        for (int dir = 0; dir < rowSteps.length; dir++) {
+            int s = start * rowSteps.length + dir;
+            gCosts[s] = 0;
+            parents[s] = -1;
+            coarseOpened.push(s, coarseDistance(start, goal), s);
+        }
+        while (!coarseOpened.isEmpty()) {
+            int s = coarseOpened.pop();
+            expanded++;
+            int c = s / rowSteps.length;
+            if (c == goal) {
+                LinkedList<Integer> path = new LinkedList<>();
+                for (int curr = s; curr >= 0; curr = parents[curr]) {
+                    path.addFirst(curr / rowSteps.length);
+                }
+                return path;
+            }
+            coarseClosed.set(s);
+            int row = c / COARSE_SIDE;
+            int col = c % COARSE_SIDE;
+            for (int dir = 0; dir < rowSteps.length; dir++) {
+                int nRow = row + rowSteps[dir];
+                int nCol = col + colSteps[dir];
+                if (nRow < 0 || nCol < 0 || nRow >= COARSE_SIDE || nCol >= COARSE_SIDE) {
+                    continue;
+                }
+                int n = nRow * COARSE_SIDE + nCol;
+                int ns = n * rowSteps.length + dir;
+                int turn = turnFlag(s % rowSteps.length, dir);
+                if (coarseClosed.get(ns) || (n != goal && (getCoarseInfo(n) & COARSE_OPEN) == 0)
+                        || (turn != 0 && c != start && (getCoarseInfo(c) & turn) == 0)) {
+                    continue;
+                }
+                int g = gCosts[s] + 1;
+                if (g < gCosts[ns]) {
+                    gCosts[ns] = g;
+                    parents[ns] = s;
+                    if (coarseOpened.contains(ns)) {
+                        coarseOpened.decreaseKey(ns, g + coarseDistance(n, goal), ns);
+                    } else {
+                        coarseOpened.push(ns, g + coarseDistance(n, goal), ns);
+                    }
+                }
             }
-            allStatePaths.add(statePath);
-            counter1++;
         }
-        return allStatePaths;
+        return null;
     }
 
-    private RobotConfig getRobotPushConfig(Node node) {
-        String dir = node.getDirection();
-        RobotConfig rc;
-        if (dir == null) {
-            Point2D point = new Point2D.Double(formatDouble(node.getCurrPos().getX() + (width / 2))
-                    , formatDouble(node.getCurrPos().getY() + width));
-            double angle = 0;
-            rc = new RobotConfig(point, angle);
-        } else if ("u".equals(dir)) {
-            Point2D point = new Point2D.Double(formatDouble(node.getCurrPos().getX() + (width / 2))
-                    , formatDouble(node.getCurrPos().getY() + width));
-            double angle = 0;
-            rc = new RobotConfig(point, angle);
-        } else if ("d".equals(dir)) {
-            Point2D point = new Point2D.Double(formatDouble(node.getCurrPos().getX() + (width / 2))
-                    , formatDouble(node.getCurrPos().getY()));
-            double angle = 0;
-            rc = new RobotConfig(point, angle);
-        } else if ("l".equals(dir)) {
-            Point2D point = new Point2D.Double(formatDouble(node.getCurrPos().getX() + (width))
-                    , formatDouble(node.getCurrPos().getY() + (width / 2)));
-            double angle = formatDouble(Math.PI / 2);
-            rc = new RobotConfig(point, angle);
+    /**
+     * Get the NO_ROOM flag of the turn between two pushes
+     * @param from index of the previous direction in [u, d, l, r]
+     * @param to index of the next direction in [u, d, l, r]
+     * @return the flag of the turn, 0 if the pushes are in the same line
+     */
+    private static int turnFlag(int from, int to) {
+        // u and d are 0 and 1, l and r are 2 and 3
+        if ((from < 2) == (to < 2)) {
+            return 0;
+        }
+        int vertical = from < 2 ? from : to;
+        int horizontal = from < 2 ? to : from;
+        if (horizontal == 3) {
+            return vertical == 0 ? NO_ROOM_RU : NO_ROOM_RD;
+        }
+        return vertical == 0 ? NO_ROOM_LU : NO_ROOM_LD;
+    }
+
+    /**
+     * Get the flags of a coarse cell, working them out on first use.
+     * COARSE_OPEN is set if any lattice point of the cell is free, and a NO_ROOM flag is set
+     * if any free lattice point of the cell has the room for that kind of turn.
+     * @param c index of the coarse cell
+     * @return the flags of the cell
+     */
+    private int getCoarseInfo(int c) {
+        int info = coarseCells[c];
+        if (info != 0) {
+            return info;
+        }
+        int turns = NO_ROOM_RU | NO_ROOM_RD | NO_ROOM_LU | NO_ROOM_LD;
+        info = KNOWN;
+        int row = c / COARSE_SIDE;
+        int col = c % COARSE_SIDE;
+        int rowEnd = Math.min(SIDE, (row + 1) * COARSE_STEPS);
+        int colEnd = Math.min(SIDE, (col + 1) * COARSE_STEPS);
+        search:
+        for (int r = row * COARSE_STEPS; r < rowEnd; r++) {
+            for (int k = col * COARSE_STEPS; k < colEnd; k++) {
+                int x = k * STEP_SIZE;
+                int y = r * STEP_SIZE;
+                if (!boxGrid.isBlocked(x, y)) {
+                    info |= COARSE_OPEN | (turns & ~noRoomFlags(x, y));
+                    if ((info & turns) == turns) {
+                        break search;
+                    }
+                }
+            }
+        }
+        coarseCells[c] = (byte) info;
+        return info;
+    }
+
+    /**
+     * Get the coarse cells within the given margin (in both axes) of a coarse path
+     * @param coarsePath coarse cell indices of the path
+     * @param margin half width of the corridor in coarse cells
+     * @return the set of coarse cell indices in the corridor
+     */
+    private BitSet getCorridor(List<Integer> coarsePath, int margin) {
+        BitSet cells = new BitSet(COARSE_SIDE * COARSE_SIDE);
+        for (int c : coarsePath) {
+            int row = c / COARSE_SIDE;
+            int col = c % COARSE_SIDE;
+            int colMin = Math.max(0, col - margin);
+            int colMax = Math.min(COARSE_SIDE - 1, col + margin);
+            for (int r = Math.max(0, row - margin); r <= Math.min(COARSE_SIDE - 1, row + margin); r++) {
+                cells.set(r * COARSE_SIDE + colMin, r * COARSE_SIDE + colMax + 1);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Check if the lattice search may enter a lattice point
+     * @param index lattice index of the point
+     * @return true if there is no corridor or the point lies in it
+     */
+    private boolean inCorridor(int index) {
+        return corridor == null || (index >= 0 && corridor.get(coarseIndex(index)));
+    }
+
+    /**
+     * Get the coarse cell containing a lattice point
+     * @param index lattice index of the point
+     * @return the coarse cell index, -1 if the point is outside the lattice
+     */
+    private int coarseIndex(int index) {
+        if (index < 0) {
+            return -1;
+        }
+        int row = index / SIDE;
+        int col = index - row * SIDE;
+        return (row / COARSE_STEPS) * COARSE_SIDE + col / COARSE_STEPS;
+    }
+
+    /**
+     * Manhattan distance between two coarse cells, in cells
+     */
+    private int coarseDistance(int a, int b) {
+        return Math.abs(a / COARSE_SIDE - b / COARSE_SIDE) + Math.abs(a % COARSE_SIDE - b % COARSE_SIDE);
+    }
+
+    /**
+     * Bidirectional A*. The forward search expands pushes from the start like pathSearch, and the backward search
+     * expands the pushes that lead into a node from the goal. A backward node keeps the direction of the push
+     * leaving it and its parent is the node that push reaches, so the room check of a turn is made at that parent
+     * once the direction of the push before is known, the same check the forward search makes.
+     * The side with fewer opened nodes is expanded next. Whenever a node is generated at a lattice point the other
+     * side has reached, the two halves are joined if the robot has the room for the turn between them.
+     * The search stops when the cheapest join is no more than the lowest F-Cost of either side, or when either
+     * side runs out of nodes.
+     * @return the box path from start to end, null if there is none
+     */
+    private BoxPath bidirectionalSearch() {
+        if (backOpened == null) {
+            backOpened = new IndexedHeap<>(SIDE * SIDE);
+            backClosed = new BitSet(SIDE * SIDE);
+            foreReached = new Node[SIDE * SIDE];
+            backReached = new Node[SIDE * SIDE];
         } else {
-            Point2D point = new Point2D.Double(formatDouble(node.getCurrPos().getX())
-                    , formatDouble(node.getCurrPos().getY() + (width / 2)));
-            double angle = formatDouble(Math.PI / 2);
-            rc = new RobotConfig(point, angle);
+            backOpened.clear();
+            backClosed.clear();
+            Arrays.fill(foreReached, null);
+            Arrays.fill(backReached, null);
         }
-        return rc;
+        int startIndex = latticeIndex(startX, startY);
+        int goalIndex = latticeIndex(endX, endY);
+        if (startIndex < 0 || goalIndex < 0) {
+            return null;
+        }
+        foreReached[startIndex] = opened.get(startIndex);
+        Node goal = new Node(endX, endY, null);
+        goal.aimAtStart();
+        backOpened.push(goalIndex, goal.getF(), goal);
+        backReached[goalIndex] = goal;
+
+        int best = Integer.MAX_VALUE;
+        Node bestFore = null;
+        Node bestBack = null;
+        // A side running out of nodes has reached everything it can, so the other side can not find new joins
+        while (!opened.isEmpty() && !backOpened.isEmpty()) {
+            if (opened.peekKey() >= best || backOpened.peekKey() >= best) {
+                break;
+            }
+            if (opened.size() <= backOpened.size()) {
+                Node q = opened.pop();
+                expanded++;
+                for (String dir : DIRECTIONS) {
+                    int x = q.getX() + stepX(dir);
+                    int y = q.getY() + stepY(dir);
+                    boolean isGoal = x == endX && y == endY;
+                    if (!isGoal && !canPush(q, x, y, dir)) {
+                        continue;
+                    }
+                    int index = latticeIndex(x, y);
+                    int g = q.getG() + STEP_SIZE;
+                    Node other = backReached[index];
+                    boolean joins = other != null && g + other.getG() < best;
+                    boolean opens = isImprovement(index, g, opened, closed);
+                    if (!joins && !opens) {
+                        continue;
+                    }
+                    Node n = new Node(x, y, q);
+                    n.setDirection(dir);
+                    if (joins && canJoin(n, other)) {
+                        best = g + other.getG();
+                        bestFore = n;
+                        bestBack = other;
+                    }
+                    if (opens) {
+                        addToOpened(n, opened, closed);
+                        foreReached[index] = n;
+                    }
+                }
+                closed.set(q.getIndex());
+            } else {
+                Node q = backOpened.pop();
+                expanded++;
+                for (String dir : DIRECTIONS) {
+                    int x = q.getX() - stepX(dir);
+                    int y = q.getY() - stepY(dir);
+                    boolean isStart = x == startX && y == startY;
+                    if (!isStart && boxGrid.isBlocked(x, y)) {
+                        continue;
+                    }
+                    if (q.getDirection() != null && isTurnBlocked(q.getParent(), dir, q.getDirection())) {
+                        continue;
+                    }
+                    int index = latticeIndex(x, y);
+                    int g = q.getG() + STEP_SIZE;
+                    Node other = foreReached[index];
+                    boolean joins = other != null && g + other.getG() < best;
+                    boolean opens = isImprovement(index, g, backOpened, backClosed);
+                    if (!joins && !opens) {
+                        continue;
+                    }
+                    Node n = new Node(x, y, q);
+                    n.setDirection(dir);
+                    n.aimAtStart();
+                    if (joins && canJoin(other, n)) {
+                        best = g + other.getG();
+                        bestFore = other;
+                        bestBack = n;
+                    }
+                    if (opens) {
+                        addToOpened(n, backOpened, backClosed);
+                        backReached[index] = n;
+                    }
+                }
+                backClosed.set(q.getIndex());
+            }
+        }
+        if (bestFore == null) {
+            return null;
+        }
+        // Replay the backward half as forward pushes after the forward half
+        Node curr = bestFore;
+        for (Node n = bestBack; n.getParent() != null; n = n.getParent()) {
+            curr = new Node(n.getParent().getX(), n.getParent().getY(), curr);
+            curr.setDirection(n.getDirection());
+        }
+        return buildPath(curr);
     }
 
-    private boolean isMvBox(Box currBox) {
-        // Check the mvBox list
-        for (Box mb : mvBox) {
-            if (currBox.getRect().intersects(formatDouble(mb.getRect().getX()), formatDouble(mb.getRect().getY())
-                    , formatDouble(mb.getWidth()), formatDouble(mb.getWidth()))) {
-                // currBox intersects, so discard newNode, start a next random search
-                ////System.out.println("Moving Box at: " + currBox.getPos().toString());
-                return true;
+    /**
+     * Check if a forward node and a backward node at the same lattice point make a valid path
+     * @param fore the forward node, reached from the start
+     * @param back the backward node, leading to the goal
+     * @return true if the robot has the room for the turn from the push into the point to the push out of it
+     */
+    private boolean canJoin(Node fore, Node back) {
+        if (fore.getDirection() == null || back.getDirection() == null) {
+            return true;
+        }
+        return !isTurnBlocked(back.getParent(), fore.getDirection(), back.getDirection());
+    }
+
+    /**
+     * Check the room for a turn the way the forward search does, where the push into the goal is never checked
+     * @param next the node the second push reaches
+     * @param parentDir direction of the first push
+     * @param dir direction of the second push
+     * @return true if the robot lacks the room for the turn
+     */
+    private boolean isTurnBlocked(Node next, String parentDir, String dir) {
+        if (next.getX() == endX && next.getY() == endY) {
+            return false;
+        }
+        return noRoom(next.getX(), next.getY(), parentDir, dir);
+    }
+
+    /**
+     * Jump Point Search over the push lattice. Straight runs of cells are skipped until a jump point:
+     * the goal, a cell with a forced neighbour, or (for vertical runs) a cell from which a horizontal run
+     * reaches a jump point. A neighbour also counts as forced when the robot lacks the room to make the turn
+     * onto it, or onto the cell beside it that the pruned alternative path would use, so runs never skip a
+     * place where the corner-turn constraint changes the reachable moves.
+     * The found path is expanded back to single steps, so the output has the same form as pathSearch,
+     * though not always the same path.
+     * @return the box path from start to end, null if there is none
+     */
+    private BoxPath jumpPointSearch() {
+        if (cellInfo == null) {
+            cellInfo = new byte[SIDE * SIDE];
+            rightRuns = new byte[SIDE * SIDE];
+            leftRuns = new byte[SIDE * SIDE];
+        } else {
+            Arrays.fill(cellInfo, (byte) 0);
+            Arrays.fill(rightRuns, (byte) 0);
+            Arrays.fill(leftRuns, (byte) 0);
+        }
+        while (!opened.isEmpty()) {
+            Node q = opened.pop();
+            expanded++;
+
+            for (String dir : DIRECTIONS) {
+                // Never go back the way we came
+                if (q.getDirection() != null && dir.equals(reverse(q.getDirection()))) {
+                    continue;
+                }
+                int dx = stepX(dir);
+                int dy = stepY(dir);
+                int x = q.getX() + dx;
+                int y = q.getY() + dy;
+                // The first step may be a turn, check it exactly
+                boolean isGoal = x == endX && y == endY;
+                if (!isGoal && (boxGrid.isBlocked(x, y)
+                        || (q.getDirection() != null && noRoom(x, y, q.getDirection(), dir)))) {
+                    continue;
+                }
+                int steps = jump(x, y, dx, dy);
+                if (steps < 0) {
+                    continue;
+                }
+                Node n = new Node(q.getX() + steps * dx, q.getY() + steps * dy, q, steps);
+                n.setDirection(dir);
+                if (n.getX() == endX && n.getY() == endY) {
+                    return buildPath(expandJumps(n));
+                }
+                addToOpened(n);
             }
+            closed.set(q.getIndex());
         }
+        return null;
+    }
 
-        // Check the movedBox list
-        for (Box mb : movedBox) {
-            if (currBox.getRect().intersects(formatDouble(mb.getRect().getX()), formatDouble(mb.getRect().getY())
-                    , formatDouble(mb.getWidth()), formatDouble(mb.getWidth()))) {
-                // currBox intersects, so discard newNode, start a next random search
-                ////System.out.println("Moved Box at: " + currBox.getPos().toString());
-                return true;
+    /**
+     * Move from (x, y) in direction (dx, dy) until a jump point is found
+     * @param x x of the first cell of the run, already known to be reachable
+     * @param y y of the first cell of the run, already known to be reachable
+     * @param dx x step of the run
+     * @param dy y step of the run
+     * @return the number of steps from the cell before (x, y) to the jump point, -1 if the run hits an obstacle
+     */
+    private int jump(int x, int y, int dx, int dy) {
+        // Turns onto the two neighbours of the run, e.g. a run to the right turns up with RU and down with RD
+        int firstTurn;
+        int secondTurn;
+        if (dx != 0) {
+            firstTurn = dx > 0 ? NO_ROOM_RU : NO_ROOM_LU;
+            secondTurn = dx > 0 ? NO_ROOM_RD : NO_ROOM_LD;
+        } else {
+            firstTurn = dy < 0 ? NO_ROOM_RU : NO_ROOM_RD;
+            secondTurn = dy < 0 ? NO_ROOM_LU : NO_ROOM_LD;
+        }
+        int steps = 1;
+        while (true) {
+            if (x == endX && y == endY) {
+                return steps;
+            }
+            if (boxGrid.isBlocked(x, y)) {
+                return -1;
+            }
+            if (dx != 0) {
+                if (isForced(x, y - STEP_SIZE, x - dx, y - STEP_SIZE, firstTurn)
+                        || isForced(x, y + STEP_SIZE, x - dx, y + STEP_SIZE, secondTurn)) {
+                    return steps;
+                }
+            } else {
+                if (isForced(x + STEP_SIZE, y, x + STEP_SIZE, y - dy, firstTurn)
+                        || isForced(x - STEP_SIZE, y, x - STEP_SIZE, y - dy, secondTurn)) {
+                    return steps;
+                }
+                // A horizontal run may branch off here, the first step of it is a turn
+                if (canTurn(x + STEP_SIZE, y, firstTurn) && reachesJumpPoint(x + STEP_SIZE, y, STEP_SIZE)
+                        || canTurn(x - STEP_SIZE, y, secondTurn) && reachesJumpPoint(x - STEP_SIZE, y, -STEP_SIZE)) {
+                    return steps;
+                }
             }
+            x += dx;
+            y += dy;
+            steps++;
         }
-        return false;
     }
 
-    private boolean isMvObst(Box currBox) {
-        for (Box mo : mvObst) {
-            if (currBox.getRect().intersects(formatDouble(mo.getRect().getX()), formatDouble(mo.getRect().getY())
-                    , formatDouble(mo.getWidth()), formatDouble(mo.getWidth()))) {
-                // currBox intersects, so discard newNode, start a next random search
-//                System.out.println("Moving Obst at: " + currBox.getPos().toString());
-                return true;
+    /**
+     * Check if a horizontal run from (x, y) reaches a jump point, the same as jump(x, y, dx, 0) >= 0.
+     * Vertical runs ask this for every cell they pass, so the answer is memoised for every cell of the run:
+     * they all end at the same place.
+     * @param x x of the first cell of the run
+     * @param y y of the run
+     * @param dx x step of the run
+     * @return true if the run reaches the goal or a cell with a forced neighbour before an obstacle
+     */
+    private boolean reachesJumpPoint(int x, int y, int dx) {
+        byte[] memo = dx > 0 ? rightRuns : leftRuns;
+        int upTurn = dx > 0 ? NO_ROOM_RU : NO_ROOM_LU;
+        int downTurn = dx > 0 ? NO_ROOM_RD : NO_ROOM_LD;
+        int curr = x;
+        boolean result;
+        while (true) {
+            int index = latticeIndex(curr, y);
+            if (curr == endX && y == endY) {
+                result = true;
+                break;
+            } else if (index < 0 || boxGrid.isBlocked(curr, y)) {
+                result = false;
+                break;
+            } else if (memo[index] != 0) {
+                result = memo[index] == 2;
+                break;
+            } else if (isForced(curr, y - STEP_SIZE, curr - dx, y - STEP_SIZE, upTurn)
+                    || isForced(curr, y + STEP_SIZE, curr - dx, y + STEP_SIZE, downTurn)) {
+                result = true;
+                break;
             }
+            curr += dx;
         }
-        return false;
+        byte value = result ? (byte) 2 : (byte) 1;
+        for (int fill = x; fill != curr; fill += dx) {
+            memo[latticeIndex(fill, y)] = value;
+        }
+        return result;
     }
 
-    private boolean isStaticObst(Box currBox) {
-        for (StaticObstacle so : staticObst) {
-            if (currBox.getRect().intersects(formatDouble(so.getRect().getX()), formatDouble(so.getRect().getY())
-                    , formatDouble(so.getRect().getWidth()), formatDouble(so.getRect().getWidth()))) {
-                // currBox intersects, so discard newNode, start a next random search
-                ////System.out.println("Static Obst at: " + currBox.getPos().toString());
-                return true;
+    /**
+     * A neighbour of a run is forced when it is free but can not be reached with the same moves
+     * through the matching cell beside the previous cell of the run, either because that cell is blocked
+     * or because the robot lacks the room to turn there or at the neighbour
+     * @param x x of the neighbour
+     * @param y y of the neighbour
+     * @param behindX x of the cell beside the previous cell of the run
+     * @param behindY y of the cell beside the previous cell of the run
+     * @param turn the NO_ROOM flag of the turn from the run onto the neighbour
+     * @return true if the neighbour has to be considered from the current cell
+     */
+    private boolean isForced(int x, int y, int behindX, int behindY, int turn) {
+        int info = getCellInfo(x, y);
+        if ((info & BLOCKED) != 0) {
+            return false;
+        }
+        return (info & turn) != 0 || !canTurn(behindX, behindY, turn);
+    }
+
+    /**
+     * Check if the box can be pushed onto (x, y) with the given kind of turn
+     * @param turn the NO_ROOM flag of the turn
+     * @return true if the position is free and the robot has room to switch sides
+     */
+    private boolean canTurn(int x, int y, int turn) {
+        return (getCellInfo(x, y) & (BLOCKED | turn)) == 0;
+    }
+
+    /**
+     * Get the cached BLOCKED and NO_ROOM flags of a lattice point, working them out on first use
+     * @return the flags of the lattice point, BLOCKED if it is outside the lattice
+     */
+    private int getCellInfo(int x, int y) {
+        int index = latticeIndex(x, y);
+        if (index < 0) {
+            return BLOCKED;
+        }
+        int info = cellInfo[index];
+        if (info == 0) {
+            info = KNOWN;
+            if (boxGrid.isBlocked(x, y)) {
+                info |= BLOCKED;
             }
+            info |= noRoomFlags(x, y);
+            cellInfo[index] = (byte) info;
         }
-        return false;
+        return info;
     }
 
-    private boolean isOutOfBounds(Box currBox) {
-        if ((formatDouble(currBox.getRect().getMaxX()) > 1) || (formatDouble(currBox.getRect().getMaxY()) > 1)
-                || (formatDouble(currBox.getRect().getMinX()) < 0) || (formatDouble(currBox.getRect().getMinY()) < 0)) {
-            ////System.out.println("Out of bounds at: " + currBox.getPos().toString());
-            return true;
+    /**
+     * Turn a path of jump points back into a path of single steps
+     * @param goal the last jump point
+     * @return the last node of the equivalent single step path
+     */
+    private Node expandJumps(Node goal) {
+        LinkedList<Node> jumps = new LinkedList<>();
+        for (Node n = goal; n != null; n = n.getParent()) {
+            jumps.addFirst(n);
         }
-        return false;
+        Node root = jumps.removeFirst();
+        Node curr = new Node(root.getX(), root.getY(), null);
+        for (Node jp : jumps) {
+            int dx = stepX(jp.getDirection());
+            int dy = stepY(jp.getDirection());
+            while (curr.getX() != jp.getX() || curr.getY() != jp.getY()) {
+                curr = new Node(curr.getX() + dx, curr.getY() + dy, curr);
+                curr.setDirection(jp.getDirection());
+            }
+        }
+        return curr;
+    }
+
+    /**
+     * Add a generated node to the opened set, unless it is closed or already opened with a lower or equal G.
+     * A node that reaches an opened lattice point with a lower G replaces it (decrease-key).
+     * @param n the generated node
+     */
+    private void addToOpened(Node n) {
+        addToOpened(n, opened, closed);
+    }
+
+    /**
+     * Check a push out of q before any node is built for it
+     * @param q the node the box is pushed from
+     * @param x bottom left x of the box after the push
+     * @param y bottom left y of the box after the push
+     * @param dir direction of the push
+     * @return true if the box fits at (x, y) and the robot has the room to turn from q's push
+     */
+    private boolean canPush(Node q, int x, int y, String dir) {
+        return !boxGrid.isBlocked(x, y) && (q.getDirection() == null || !noRoom(x, y, q.getDirection(), dir));
+    }
+
+    /**
+     * Check if addToOpened would take a node with the given G at a lattice point, without building the node
+     * @param index lattice index of the point
+     * @param g G-Cost of the node
+     * @param heap the opened set of the search
+     * @param done the closed set of the search
+     * @return true if the point is not closed and not opened with a lower or equal G
+     */
+    private boolean isImprovement(int index, int g, IndexedHeap<Node> heap, BitSet done) {
+        if (index < 0 || done.get(index)) {
+            return false;
+        }
+        Node old = heap.get(index);
+        return old == null || g < old.getG();
+    }
+
+    /**
+     * Add a generated node to the given opened set, the same way as addToOpened(Node)
+     * @param n the generated node
+     * @param heap the opened set of the search
+     * @param done the closed set of the search
+     * @return true if the node was added or replaced an opened node
+     */
+    private boolean addToOpened(Node n, IndexedHeap<Node> heap, BitSet done) {
+        if (n.getIndex() >= 0 && done.get(n.getIndex())) {
+            return false;
+        }
+        Node old = heap.get(n.getIndex());
+        if (old == null) {
+            heap.push(n.getIndex(), n.getF(), n);
+        } else if (n.getG() < old.getG()) {
+            heap.decreaseKey(n.getIndex(), n.getF(), n);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Record the path ending at the given goal node as its start and the direction of every push
+     * @param goal the goal node, linked to the root through single step parents
+     * @return the box path from start to end
+     */
+    private BoxPath buildPath(Node goal) {
+        int pushes = 0;
+        for (Node n = goal; n.getParent() != null; n = n.getParent()) {
+            pushes++;
+        }
+        byte[] codes = new byte[pushes];
+        Node nodeCheck = goal;
+        for (int i = pushes - 1; i >= 0; i--) {
+            codes[i] = BoxPath.toCode(nodeCheck.getDirection());
+            nodeCheck = nodeCheck.getParent();
+        }
+        return new BoxPath(nodeCheck.getX(), nodeCheck.getY(), width, STEP_SIZE, codes, movedBox, mvBox);
+    }
+
+    /**
+     * @return the number of nodes expanded over all box searches, coarse searches included
+     */
+    public int getExpandedNodes() {
+        return expanded;
+    }
+
+    /**
+     * Get the states of every box path that was found. The states are views of the compact paths,
+     * which only keep one byte per push, and are built as they are read.
+     * @return the state path of each box that has a path, in box order
+     */
+    public List<List<State>> getStateList() {
+        List<List<State>> allStatePaths = new ArrayList<>();
+        for (BoxPath path : boxPaths) {
+            if (path != null) {
+                allStatePaths.add(path.getStates(mvObst));
+            }
+        }
+        return allStatePaths;
+    }
+
+    /**
+     * @return the compact path of every box in order, null where no path was found
+     */
+    public List<BoxPath> getBoxPaths() {
+        return boxPaths;
+    }
+
+    /**
+     * Get the occupancy raster for boxes of the given size, building it from the current
+     * obstacles the first time the size is needed. Rasters are kept up to date as boxes move.
+     * @param size width of the box in micro-units
+     * @return the raster for that size
+     */
+    private OccupancyGrid getGrid(int size) {
+        for (OccupancyGrid grid : grids) {
+            if (grid.getSize() == size) {
+                return grid;
+            }
+        }
+        OccupancyGrid grid = new OccupancyGrid(STEP_SIZE, SIDE, size);
+        for (int[] rect : staticRects) {
+            grid.add(rect);
+        }
+        for (int[] rect : mvObstRects) {
+            grid.add(rect);
+        }
+        for (int[] rect : mvBoxRects) {
+            grid.add(rect);
+        }
+        for (int[] rect : movedBoxRects) {
+            grid.add(rect);
+        }
+        grids.add(grid);
+        return grid;
     }
 
     public List<LinkedList<Point2D>> getMvBoxPaths() {
+        List<LinkedList<Point2D>> mvBoxPaths = new ArrayList<>();
+        for (BoxPath path : boxPaths) {
+            mvBoxPaths.add(path == null ? null : path.getPoints());
+        }
         return mvBoxPaths;
     }
 
-    private double formatDouble(double number) {
-        return Double.parseDouble(DECIMAL.format(number));
+    /**
+     * Check if the robot lacks the room to switch sides when the box is pushed to (x, y)
+     * after moving in parentDir and then in dir
+     * @param x bottom left x of the box in micro-units
+     * @param y bottom left y of the box in micro-units
+     * @param parentDir direction of the previous push
+     * @param dir direction of the current push
+     * @return true if a half width square the robot needs is blocked
+     */
+    private boolean noRoom(int x, int y, String parentDir, String dir) {
+        // The robot needs a half width square on both sides it switches between
+        if ((parentDir.equals("r") && dir.equals("u"))
+                || (parentDir.equals("u") && dir.equals("r"))) {
+            int leftX = FixedPoint.addHalf(x, -width);
+            int leftY = FixedPoint.addHalf(y, width);
+            int downX = x;
+            int downY = y + width;
+
+            return roomGrid.isBlocked(leftX, leftY) || roomGrid.isBlocked(downX, downY);
+        } else if ((parentDir.equals("r") && dir.equals("d"))
+                || (parentDir.equals("d") && dir.equals("r"))) {
+            int leftX = FixedPoint.addHalf(x, -width);
+            int leftY = y;
+            int upX = x;
+            int upY = FixedPoint.addHalf(y, -width);
+
+            return roomGrid.isBlocked(leftX, leftY) || roomGrid.isBlocked(upX, upY);
+        } else if ((parentDir.equals("l") && dir.equals("u"))
+                || (parentDir.equals("u") && dir.equals("l"))) {
+            int rightX = x + width;
+            int rightY = FixedPoint.addHalf(y, width);
+            int downX = FixedPoint.addHalf(x, width);
+            int downY = y + width;
+
+            return roomGrid.isBlocked(rightX, rightY) || roomGrid.isBlocked(downX, downY);
+        } else if ((parentDir.equals("l") && dir.equals("d"))
+                || (parentDir.equals("d") && dir.equals("l"))) {
+            int rightX = x + width;
+            int rightY = y;
+            int upX = FixedPoint.addHalf(x, width);
+            int upY = y - width;
+
+            return roomGrid.isBlocked(rightX, rightY) || roomGrid.isBlocked(upX, upY);
+        }
+        return false;
     }
 
+    /**
+     * Work out noRoom for all four kinds of turn at once, sharing the room squares they have in common
+     * @param x bottom left x of the box in micro-units
+     * @param y bottom left y of the box in micro-units
+     * @return the NO_ROOM flags of the position
+     */
+    private int noRoomFlags(int x, int y) {
+        int leftX = FixedPoint.addHalf(x, -width);
+        int rightX = x + width;
+        int midX = FixedPoint.addHalf(x, width);
+        int midY = FixedPoint.addHalf(y, width);
+        boolean upperLeft = roomGrid.isBlocked(leftX, midY);
+        boolean lowerLeft = roomGrid.isBlocked(leftX, y);
+        boolean upperRight = roomGrid.isBlocked(rightX, midY);
+        boolean lowerRight = roomGrid.isBlocked(rightX, y);
+        boolean down = roomGrid.isBlocked(x, y + width);
+        boolean up = roomGrid.isBlocked(x, FixedPoint.addHalf(y, -width));
+        boolean midDown = roomGrid.isBlocked(midX, y + width);
+        boolean midUp = roomGrid.isBlocked(midX, y - width);
+
+        int flags = 0;
+        if (upperLeft || down) {
+            flags |= NO_ROOM_RU;
+        }
+        if (lowerLeft || up) {
+            flags |= NO_ROOM_RD;
+        }
+        if (upperRight || midDown) {
+            flags |= NO_ROOM_LU;
+        }
+        if (lowerRight || midUp) {
+            flags |= NO_ROOM_LD;
+        }
+        return flags;
+    }
+
+    private int stepX(String dir) {
+        if ("l".equals(dir)) {
+            return -STEP_SIZE;
+        } else if ("r".equals(dir)) {
+            return STEP_SIZE;
+        }
+        return 0;
+    }
+
+    // "u" lowers y and "d" raises it
+    private int stepY(String dir) {
+        if ("u".equals(dir)) {
+            return -STEP_SIZE;
+        } else if ("d".equals(dir)) {
+            return STEP_SIZE;
+        }
+        return 0;
+    }
+
+    private static String reverse(String dir) {
+        switch (dir) {
+            case "u": return "d";
+            case "d": return "u";
+            case "l": return "r";
+            default: return "l";
+        }
+    }
+
+    /**
+     * Get the lattice index of a box position, used to address the opened and closed sets
+     * @param x bottom left x in micro-units
+     * @param y bottom left y in micro-units
+     * @return the lattice index, -1 if the position is outside the workspace
+     */
+    private int latticeIndex(int x, int y) {
+        int col = x / STEP_SIZE;
+        int row = y / STEP_SIZE;
+        if (x < 0 || y < 0 || col * STEP_SIZE != x || row * STEP_SIZE != y || col >= SIDE || row >= SIDE) {
+            return -1;
+        }
+        return row * SIDE + col;
+    }
+
+
 
 
 
@@ -321,25 +1366,48 @@ public class Astar {
 
 
 
+    /**
+     * The result of planning one box on its own
+     */
+    private static class Plan {
+        private BoxPath path;
+        private int expanded;
+        // The boxes the plan was made with at their starts
+        private BitSet failed;
+
+        private Plan(BoxPath path, int expanded, BitSet failed) {
+            this.path = path;
+            this.expanded = expanded;
+            this.failed = failed;
+        }
+    }
 
     private class Node {
         // Class Variables //
-        private Point2D currPos;
-        private Box currBox;
-        private double fCost;
-        private double gCost;
-        private double hCost;
+        // Bottom left position of the box in micro-units
+        private int x;
+        private int y;
+        private int index;
+        private int fCost;
+        private int gCost;
+        private int hCost;
         private String direction = null; // Only the root node will have null direction
         private Node parent; // The root node will have null parent
-        private List<Point2D> children = new ArrayList<>();
 
         // Constructors //
-        private Node(Point2D pos, Node parent) {
-            currPos = pos;
-            currBox = new MovingBox(currPos, width);
+        private Node(int x, int y, Node parent) {
+            this(x, y, parent, 1);
+        }
+
+        /**
+         * A node reached from parent by a straight run of the given number of steps
+         */
+        private Node(int x, int y, Node parent, int steps) {
+            this.x = x;
+            this.y = y;
+            index = latticeIndex(x, y);
             this.parent = parent;
-            setCosts();
-            setChildren();
+            setCosts(steps);
         }
 
         // Methods //
@@ -348,28 +1416,41 @@ public class Astar {
         public boolean equals(Object o) {
             if (o instanceof Node) {
                 Node n = (Node) o;
-                return n.getCurrPos().equals(currPos);
+                return n.x == x && n.y == y;
             }
             return false;
         }
 
-        private Box getCurrBox() {
-            return currBox;
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+
+        private int getX() {
+            return x;
+        }
+
+        private int getY() {
+            return y;
         }
 
         private Point2D getCurrPos() {
-            return currPos;
+            return new Point2D.Double(FixedPoint.toDouble(x), FixedPoint.toDouble(y));
+        }
+
+        private int getIndex() {
+            return index;
         }
 
-        private double getF() {
+        private int getF() {
             return fCost;
         }
 
-        private double getG() {
+        private int getG() {
             return gCost;
         }
 
-        private double getH() {
+        private int getH() {
             return  hCost;
         }
 
@@ -377,62 +1458,34 @@ public class Astar {
             return parent;
         }
 
-        private void setG() {
+        private void setG(int steps) {
             if (parent != null) {
-                gCost = formatDouble(parent.getG() + STEP_SIZE);
+                gCost = parent.getG() + steps * STEP_SIZE;
             } else {
                 gCost = 0;
             }
         }
 
         private void setH() {
-            hCost = formatDouble(Math.abs(end.getX() - currPos.getX())
-                    + Math.abs(end.getY() - currPos.getY()));
+            hCost = Math.abs(endX - x) + Math.abs(endY - y);
         }
 
         private void setF() {
-            fCost = formatDouble(gCost + hCost);
+            fCost = gCost + hCost;
         }
 
-        private void setCosts() {
-            setG();
+        private void setCosts(int steps) {
+            setG(steps);
             setH();
             setF();
         }
 
-        private void setChildren() {
-            // order = [u, d, l ,r]
-            Point2D u = new Point2D.Double(formatDouble(currPos.getX())
-                    , formatDouble(currPos.getY() - STEP_SIZE));
-            Point2D d = new Point2D.Double(formatDouble(currPos.getX())
-                    , formatDouble(currPos.getY() + STEP_SIZE));
-            Point2D l = new Point2D.Double(formatDouble(currPos.getX() - STEP_SIZE)
-                    , formatDouble(currPos.getY()));
-            Point2D r = new Point2D.Double(formatDouble(currPos.getX() + STEP_SIZE)
-                    , formatDouble(currPos.getY()));
-            children.add(u);
-            children.add(d);
-            children.add(l);
-            children.add(r);
-        }
-
-        private List<Node> getChildren() {
-            Node u = new Node(children.get(0), this);
-            u.setDirection("u");
-            Node d = new Node(children.get(1), this);
-            d.setDirection("d");
-            Node l = new Node(children.get(2), this);
-            l.setDirection("l");
-            Node r = new Node(children.get(3), this);
-            r.setDirection("r");
-
-            List<Node> list = new ArrayList<>();
-            list.add(u);
-            list.add(d);
-            list.add(l);
-            list.add(r);
-
-            return list;
+        /**
+         * Measure H to the start instead of the end, for nodes of the backward search
+         */
+        private void aimAtStart() {
+            hCost = Math.abs(startX - x) + Math.abs(startY - y);
+            setF();
         }
 
         private void setDirection(String direction) {
@@ -444,79 +1497,5 @@ public class Astar {
         private String getDirection() {
             return direction;
         }
-
-        @Deprecated
-        private boolean lessFCostInOpened() {
-            for (Node n : opened) {
-                if (this.equals(n) && (n.getF() <= this.fCost)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        @Deprecated
-        private boolean inClosed() {
-            for (Node n : closed) {
-                if (this.equals(n)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        private boolean hasNoRoom() {
-            if (parent.getDirection() == null) {
-                return false;
-            } else if ((parent.getDirection().equals("r") && direction.equals("u"))
-                    || (parent.getDirection().equals("u") && direction.equals("r"))) {
-                Point2D leftBoxPoint = new Point2D.Double(formatDouble((currBox.getRect().getX() - (width / 2)))
-                        , formatDouble(currBox.getRect().getCenterY()));
-                Point2D downBoxPoint = new Point2D.Double(formatDouble(currBox.getRect().getX())
-                        , formatDouble((currBox.getRect().getY() + width)));
-                Box leftBox = new MovingBox(leftBoxPoint, formatDouble((robotWidth / 2)));
-                Box downBox = new MovingBox(downBoxPoint, formatDouble((robotWidth / 2)));
-
-                return (isMvBox(leftBox) || isMvObst(leftBox) || isStaticObst(leftBox) || isOutOfBounds(leftBox)
-                        || isMvBox(downBox) || isMvObst(downBox) || isStaticObst(downBox) || isOutOfBounds(downBox));
-            } else if ((parent.getDirection().equals("r") && direction.equals("d"))
-                    || (parent.getDirection().equals("d") && direction.equals("r"))) {
-                Point2D leftBoxPoint = new Point2D.Double(formatDouble((currBox.getRect().getX() - (width / 2)))
-                        , formatDouble(currBox.getRect().getY()));
-                Point2D upBoxPoint = new Point2D.Double(formatDouble(currBox.getRect().getX())
-                        , formatDouble((currBox.getRect().getY() - (width / 2))));
-                Box leftBox = new MovingBox(leftBoxPoint, formatDouble((robotWidth / 2)));
-                Box upBox = new MovingBox(upBoxPoint, formatDouble((robotWidth / 2)));
-
-                return (isMvBox(leftBox) || isMvObst(leftBox) || isStaticObst(leftBox) || isOutOfBounds(leftBox)
-                        || isMvBox(upBox) || isMvObst(upBox) || isStaticObst(upBox) || isOutOfBounds(upBox));
-            } else if ((parent.getDirection().equals("l") && direction.equals("u"))
-                    || (parent.getDirection().equals("u") && direction.equals("l"))) {
-                Point2D rightBoxPoint = new Point2D.Double(formatDouble((currBox.getRect().getX() + width))
-                        , formatDouble(currBox.getRect().getCenterY()));
-                Point2D downBoxPoint = new Point2D.Double(formatDouble(currBox.getRect().getCenterX())
-                        , formatDouble((currBox.getRect().getY() + width)));
-                Box rightBox = new MovingBox(rightBoxPoint, formatDouble((robotWidth / 2)));
-                Box downBox = new MovingBox(downBoxPoint, formatDouble((robotWidth / 2)));
-
-                return (isMvBox(rightBox) || isMvObst(rightBox) || isStaticObst(rightBox) || isOutOfBounds(rightBox)
-                        || isMvBox(downBox) || isMvObst(downBox) || isStaticObst(downBox) || isOutOfBounds(downBox));
-            } else if ((parent.getDirection().equals("l") && direction.equals("d"))
-                    || (parent.getDirection().equals("d") && direction.equals("l"))) {
-                Point2D rightBoxPoint = new Point2D.Double(formatDouble((currBox.getRect().getX() + width))
-                        , formatDouble(currBox.getRect().getY()));
-                Point2D upBoxPoint = new Point2D.Double(formatDouble(currBox.getRect().getCenterX())
-                        , formatDouble((currBox.getRect().getY() - width)));
-                Box rightBox = new MovingBox(rightBoxPoint, formatDouble((robotWidth / 2)));
-                Box upBox = new MovingBox(upBoxPoint, formatDouble((robotWidth / 2)));
-
-                return (isMvBox(rightBox) || isMvObst(rightBox) || isStaticObst(rightBox) || isOutOfBounds(rightBox)
-                        || isMvBox(upBox) || isMvObst(upBox) || isStaticObst(upBox) || isOutOfBounds(upBox));
-            }
-
-            return false;
-
-        }
     }
 }
-
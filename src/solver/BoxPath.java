@@ -0,0 +1,256 @@
+package solver;
+
+import problem.Box;
+import problem.MovingBox;
+import problem.RobotConfig;
+
+import java.awt.geom.Point2D;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The path of one moving box, stored as its start position and one byte per push.
+ * The other boxes stay where they are while this box moves, so they are kept once for the
+ * whole path instead of once per step. Points and States are only built when they are asked for.
+ * Positions are FixedPoint micro-units.
+ */
+public class BoxPath {
+    /** Push directions in the order of their byte codes */
+    public static final String[] DIRECTIONS = {"u", "d", "l", "r"};
+
+    private int startX;
+    private int startY;
+    private int width;
+    //distance moved by one push
+    private int step;
+    //index into DIRECTIONS of every push
+    private byte[] pushes;
+    //boxes listed before and after this box in every state
+    private List<Box> before;
+    private List<Box> after;
+
+    /**
+     * Constructor
+     * @param startX bottom left x of the box at the start
+     * @param startY bottom left y of the box at the start
+     * @param width width of the box
+     * @param step distance moved by one push
+     * @param pushes index into DIRECTIONS of every push
+     * @param before boxes listed before this box in every state, copied
+     * @param after boxes listed after this box in every state, copied
+     */
+    public BoxPath(int startX, int startY, int width, int step, byte[] pushes, List<Box> before, List<Box> after) {
+        this.startX = startX;
+        this.startY = startY;
+        this.width = width;
+        this.step = step;
+        this.pushes = pushes;
+        this.before = new ArrayList<>(before);
+        this.after = new ArrayList<>(after);
+    }
+
+    /**
+     * Get the same path with other boxes around it
+     * @param before boxes listed before this box in every state
+     * @param after boxes listed after this box in every state
+     * @return the new path, sharing the pushes of this one
+     */
+    public BoxPath withOtherBoxes(List<Box> before, List<Box> after) {
+        return new BoxPath(startX, startY, width, step, pushes, before, after);
+    }
+
+    /**
+     * Get the byte code of a push direction
+     * @param direction one of DIRECTIONS
+     * @return the index of the direction in DIRECTIONS
+     */
+    public static byte toCode(String direction) {
+        for (byte i = 0; i < DIRECTIONS.length; i++) {
+            if (DIRECTIONS[i].equals(direction)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown direction: " + direction);
+    }
+
+    /**
+     * @return the number of positions on the path, the start included
+     */
+    public int size() {
+        return pushes.length + 1;
+    }
+
+    public int getStartX() {
+        return startX;
+    }
+
+    public int getStartY() {
+        return startY;
+    }
+
+    /**
+     * Get the direction of a push
+     * @param push index of the push, 0 is the push away from the start
+     * @return the direction, one of DIRECTIONS
+     */
+    public String getDirection(int push) {
+        return DIRECTIONS[pushes[push]];
+    }
+
+    /**
+     * Get the x offset of a push
+     * @param push index of the push
+     * @return the change of the bottom left x in micro-units
+     */
+    public int getStepX(int push) {
+        switch (pushes[push]) {
+            case 2: return -step;
+            case 3: return step;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Get the y offset of a push, "u" lowers y and "d" raises it
+     * @param push index of the push
+     * @return the change of the bottom left y in micro-units
+     */
+    public int getStepY(int push) {
+        switch (pushes[push]) {
+            case 0: return -step;
+            case 1: return step;
+            default: return 0;
+        }
+    }
+
+    /**
+     * @return the bottom left positions of the box along the path
+     */
+    public LinkedList<Point2D> getPoints() {
+        LinkedList<Point2D> points = new LinkedList<>();
+        int x = startX;
+        int y = startY;
+        points.add(toPoint(x, y));
+        for (int i = 0; i < pushes.length; i++) {
+            x += getStepX(i);
+            y += getStepY(i);
+            points.add(toPoint(x, y));
+        }
+        return points;
+    }
+
+    /**
+     * Get the states along the path, computed from the pushes when they are asked for instead of being stored.
+     * Every state gets its own box and robot config, the other boxes are shared between the states.
+     * @param movingObst the moving obstacles of every state
+     * @return the states from the start to the end of the path
+     */
+    public List<State> getStates(List<Box> movingObst) {
+        return new StepStates(movingObst);
+    }
+
+    private State getState(int x, int y, String dir, List<Box> movingObst) {
+        Box box = new MovingBox(toPoint(x, y), FixedPoint.toDouble(width));
+        return new State(getRobotPushConfig(x, y, dir), new StepBoxes(box), movingObst);
+    }
+
+    /**
+     * Get the robot config that has just pushed the box to (x, y) in the given direction.
+     * This is the file boundary, so the doubles are rounded exactly like the solution files expect.
+     * @param x bottom left x of the box
+     * @param y bottom left y of the box
+     * @param dir direction of the push, null at the start
+     * @return the robot config touching the box
+     */
+    private RobotConfig getRobotPushConfig(int x, int y, String dir) {
+        double bx = FixedPoint.toDouble(x);
+        double by = FixedPoint.toDouble(y);
+        double w = FixedPoint.toDouble(width);
+        RobotConfig rc;
+        if (dir == null || "u".equals(dir)) {
+            Point2D point = new Point2D.Double(FixedPoint.format3(bx + (w / 2)), FixedPoint.format3(by + w));
+            rc = new RobotConfig(point, 0);
+        } else if ("d".equals(dir)) {
+            Point2D point = new Point2D.Double(FixedPoint.format3(bx + (w / 2)), FixedPoint.format3(by));
+            rc = new RobotConfig(point, 0);
+        } else if ("l".equals(dir)) {
+            Point2D point = new Point2D.Double(FixedPoint.format3(bx + w), FixedPoint.format3(by + (w / 2)));
+            rc = new RobotConfig(point, FixedPoint.format3(Math.PI / 2));
+        } else {
+            Point2D point = new Point2D.Double(FixedPoint.format3(bx), FixedPoint.format3(by + (w / 2)));
+            rc = new RobotConfig(point, FixedPoint.format3(Math.PI / 2));
+        }
+        return rc;
+    }
+
+    private static Point2D toPoint(int x, int y) {
+        return new Point2D.Double(FixedPoint.toDouble(x), FixedPoint.toDouble(y));
+    }
+
+    /**
+     * The states along the path. The view keeps the position of the state it built last,
+     * so going through the states in order replays one push per state.
+     */
+    private class StepStates extends AbstractList<State> {
+        private List<Box> movingObst;
+        //index and bottom left position of the state built last
+        private int index = 0;
+        private int x = startX;
+        private int y = startY;
+
+        private StepStates(List<Box> movingObst) {
+            this.movingObst = movingObst;
+        }
+
+        @Override
+        public State get(int i) {
+            if (i < 0 || i >= size()) {
+                throw new IndexOutOfBoundsException("State " + i + " of " + size());
+            }
+            while (index < i) {
+                x += getStepX(index);
+                y += getStepY(index);
+                index++;
+            }
+            while (index > i) {
+                index--;
+                x -= getStepX(index);
+                y -= getStepY(index);
+            }
+            return getState(x, y, i == 0 ? null : getDirection(i - 1), movingObst);
+        }
+
+        @Override
+        public int size() {
+            return BoxPath.this.size();
+        }
+    }
+
+    /**
+     * The boxes of one state: the shared boxes before, the box of this step, then the shared boxes after
+     */
+    private class StepBoxes extends AbstractList<Box> {
+        private Box box;
+
+        private StepBoxes(Box box) {
+            this.box = box;
+        }
+
+        @Override
+        public Box get(int index) {
+            if (index < before.size()) {
+                return before.get(index);
+            } else if (index == before.size()) {
+                return box;
+            }
+            return after.get(index - before.size() - 1);
+        }
+
+        @Override
+        public int size() {
+            return before.size() + 1 + after.size();
+        }
+    }
+}
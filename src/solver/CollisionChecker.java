@@ -0,0 +1,181 @@
+package solver;
+
+import problem.Box;
+import problem.ProblemSpec;
+import problem.RobotConfig;
+import problem.StaticObstacle;
+import tester.Tester;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collision checks of the robot against fixed regions, giving the same answers as Tester.hasCollision.
+ * The regions are grown by -MAX_ERROR once when the checker is made, so a check only computes the
+ * two ends of the robot and tests them against the regions, without creating any objects.
+ * Edges are checked at the endpoints first, then at midpoints in bisection order, the coarse checks
+ * over the whole edge coming before the fine ones, and the check stops at the first collision.
+ * A checker is only read after it is made, so several threads can use it at once.
+ */
+public class CollisionChecker {
+    //max distance an end of the robot moves between two checked configs of an edge
+    public static final double RESOLUTION = 0.002;
+
+    private double width;
+    //the regions the robot must not cross, grown by -MAX_ERROR
+    private Rectangle2D[] regions;
+    //the robot must also stay within the unit square
+    private boolean border;
+    //false if the boxes collide with each other, the border or the static obstacles,
+    //in which case Tester finds every robot config in collision
+    private boolean boxesValid = true;
+
+    /**
+     * A checker of the static obstacles, boxes and moving obstacles of a state
+     * @param ps the problem spec
+     * @param state the state holding the boxes and moving obstacles
+     */
+    public CollisionChecker(ProblemSpec ps, State state) {
+        this.width = ps.getRobotWidth();
+        this.border = true;
+        List<Box> movables = new ArrayList<>();
+        movables.addAll(state.getBoxes());
+        movables.addAll(state.getMovingObst());
+
+        List<Rectangle2D> rects = new ArrayList<>();
+        for (StaticObstacle o : ps.getStaticObstacles()) {
+            rects.add(o.getRect());
+        }
+        Rectangle2D unit = new Rectangle2D.Double(0, 0, 1, 1);
+        for (Box b1 : movables) {
+            Rectangle2D collisionBox = grow(b1.getRect());
+            if (!unit.contains(b1.getRect())) {
+                boxesValid = false;
+            }
+            for (Box b2 : movables) {
+                if (!b1.equals(b2) && collisionBox.intersects(b2.getRect())) {
+                    boxesValid = false;
+                }
+            }
+            for (StaticObstacle o : ps.getStaticObstacles()) {
+                if (collisionBox.intersects(o.getRect())) {
+                    boxesValid = false;
+                }
+            }
+            rects.add(b1.getRect());
+        }
+        this.regions = growAll(rects);
+    }
+
+    /**
+     * A checker of some regions only, e.g. the new positions of the boxes that moved.
+     * The border is not checked.
+     * @param ps the problem spec
+     * @param rects the regions
+     */
+    public CollisionChecker(ProblemSpec ps, List<Rectangle2D> rects) {
+        this.width = ps.getRobotWidth();
+        this.border = false;
+        this.regions = growAll(rects);
+    }
+
+    /**
+     * Check if a robot config is collision free
+     * @param rc the robot config
+     * @return true if the robot crosses no region
+     */
+    public boolean isFree(RobotConfig rc) {
+        return isFree(rc.getPos().getX(), rc.getPos().getY(), rc.getOrientation());
+    }
+
+    /**
+     * Check if a robot config is collision free
+     * @return true if the robot crosses no region
+     */
+    public boolean isFree(double x, double y, double angle) {
+        return boxesValid && robotFree(x, y, angle);
+    }
+
+    /**
+     * Check if every robot config on the straight edge between two configs is collision free.
+     * The number of configs checked grows with the distance the ends of the robot sweep,
+     * so that no end moves more than RESOLUTION between two of them.
+     * @param r1 RobotConfig 1
+     * @param r2 RobotConfig 2
+     * @return true if the edge is collision free
+     */
+    public boolean isEdgeFree(RobotConfig r1, RobotConfig r2) {
+        return isEdgeFree(r1.getPos().getX(), r1.getPos().getY(), r1.getOrientation(),
+                r2.getPos().getX(), r2.getPos().getY(), r2.getOrientation());
+    }
+
+    /**
+     * Check if every robot config on the straight edge from (x, y, angle) to (x2, y2, angle2) is collision free
+     * @return true if the edge is collision free
+     */
+    public boolean isEdgeFree(double x, double y, double angle, double x2, double y2, double angle2) {
+        if (!boxesValid) {
+            return false;
+        }
+        double dx = x2 - x;
+        double dy = y2 - y;
+        //turn the short way round, like the neighbour distance
+        double dAngle = PRM.nearAngle(angle, angle2) - angle;
+        if (!robotFree(x, y, angle) || !robotFree(x + dx, y + dy, angle + dAngle)) {
+            return false;
+        }
+
+        //an end of the robot moves at most as far as the centre plus the arc it turns on
+        double sweep = Math.sqrt(dx * dx + dy * dy) + Math.abs(dAngle) * width / 2;
+        int segments = 1;
+        while (segments * RESOLUTION < sweep) {
+            segments *= 2;
+        }
+        //the midpoints of the segments of each halving: 1/2, then 1/4 and 3/4, then 1/8, 3/8...
+        for (int step = segments; step > 1; step /= 2) {
+            for (int i = step / 2; i < segments; i += step) {
+                double t = (double) i / segments;
+                if (!robotFree(x + t * dx, y + t * dy, angle + t * dAngle)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean robotFree(double x, double y, double angle) {
+        //the ends of the robot, computed like Tester.getPoint1 and getPoint2
+        double x1 = x - Math.cos(angle) * width * 0.5;
+        double y1 = y - Math.sin(angle) * width * 0.5;
+        double x2 = x + Math.cos(angle) * width * 0.5;
+        double y2 = y + Math.sin(angle) * width * 0.5;
+        if (border && !(inUnitSquare(x1, y1) && inUnitSquare(x2, y2))) {
+            return false;
+        }
+        for (Rectangle2D region : regions) {
+            if (region.intersectsLine(x1, y1, x2, y2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //same as Rectangle2D.contains for the unit square
+    private static boolean inUnitSquare(double x, double y) {
+        return x >= 0 && y >= 0 && x < 1 && y < 1;
+    }
+
+    private static Rectangle2D grow(Rectangle2D rect) {
+        return new Rectangle2D.Double(rect.getX() + Tester.MAX_ERROR, rect.getY() + Tester.MAX_ERROR,
+                rect.getWidth() - 2 * Tester.MAX_ERROR, rect.getHeight() - 2 * Tester.MAX_ERROR);
+    }
+
+    private static Rectangle2D[] growAll(List<Rectangle2D> rects) {
+        Rectangle2D[] grown = new Rectangle2D[rects.size()];
+        for (int i = 0; i < grown.length; i++) {
+            grown[i] = grow(rects.get(i));
+        }
+        return grown;
+    }
+}
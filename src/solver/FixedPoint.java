@@ -0,0 +1,123 @@
+package solver;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point coordinates stored as integer micro-units (1 unit = 1 000 000 micro-units).
+ * Solver hot paths work on these ints directly and only convert to double at the
+ * boundary (reading the problem, writing RobotConfigs and boxes for the solution file).
+ * Rounding to 3 decimal places matches the DecimalFormat("0.###") rounding the solver used before,
+ * and addHalf and sumExceeds settle exact ties on the doubles the way the old code did, so search
+ * results are the same as with the old formatted doubles.
+ */
+public final class FixedPoint {
+    /** Number of micro-units in one unit */
+    public static final int SCALE = 1000000;
+    /** Number of micro-units in one primitive step (0.001) */
+    public static final int MILLI = 1000;
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Convert a double to the nearest micro-unit
+     * @param value value in units
+     * @return value in micro-units
+     */
+    public static int toMicro(double value) {
+        return (int) Math.round(value * SCALE);
+    }
+
+    /**
+     * Convert micro-units back to a double. The division is correctly rounded, so the result
+     * is the same double as parsing the decimal representation of the value.
+     * @param micro value in micro-units
+     * @return value in units
+     */
+    public static double toDouble(int micro) {
+        return micro / (double) SCALE;
+    }
+
+    /**
+     * Round micro-units to a multiple of MILLI (3 decimal places), half to even
+     * @param micro value in micro-units
+     * @return rounded value in micro-units
+     */
+    public static int roundToMilli(int micro) {
+        int q = Math.floorDiv(micro, MILLI);
+        int r = micro - q * MILLI;
+        if (r == 0) {
+            return micro;
+        }
+        if (r > MILLI / 2 || (r == MILLI / 2 && (q & 1) != 0)) {
+            q++;
+        }
+        return q * MILLI;
+    }
+
+    /**
+     * Round a + b / 2 to 3 decimal places the way the old code rounded the double sum with DecimalFormat.
+     * The double sum of a value on a rounding tie lies a little above or below it, so ties are settled
+     * on that double and everything else in ints.
+     * @param a value in micro-units, a multiple of MILLI
+     * @param b value in micro-units, a multiple of MILLI, halved before it is added
+     * @return rounded value in micro-units
+     */
+    public static int addHalf(int a, int b) {
+        int sum = a + b / 2;
+        if (sum - Math.floorDiv(sum, MILLI) * MILLI != MILLI / 2) {
+            return roundToMilli(sum);
+        }
+        return round3(toDouble(a) + toDouble(b) / 2);
+    }
+
+    /**
+     * Check a + b > c the way the old code compared the doubles of these values, as in Rectangle2D.intersects.
+     * The double sum of two values that exactly touch c can come out either side of it,
+     * so only that case is settled on the doubles.
+     * @param a value in micro-units
+     * @param b value in micro-units
+     * @param c value in micro-units
+     * @return true if the sum of a and b is above c
+     */
+    public static boolean sumExceeds(int a, int b, int c) {
+        long sum = (long) a + b;
+        if (sum != c) {
+            return sum > c;
+        }
+        return toDouble(a) + toDouble(b) > toDouble(c);
+    }
+
+    /**
+     * Round a double to 3 decimal places and convert it to micro-units.
+     * Values that sit on a rounding tie are resolved on their exact binary value,
+     * the same way DecimalFormat does, so results agree with the old string rounding.
+     * @param value value in units
+     * @return rounded value in micro-units
+     */
+    public static int round3(double value) {
+        double scaled = value * MILLI;
+        double floor = Math.floor(scaled);
+        double frac = scaled - floor;
+        if (Math.abs(frac - 0.5) > 1e-6) {
+            return (int) (frac < 0.5 ? floor : floor + 1) * MILLI;
+        }
+        // Rare near-tie, settle it on the exact binary value like DecimalFormat,
+        // which rounds a tie that would drop every significant digit (+-0.0005) to zero
+        if (floor == 0 || floor == -1) {
+            return 0;
+        }
+        return new BigDecimal(value).setScale(3, RoundingMode.HALF_EVEN)
+                .movePointRight(6).intValue();
+    }
+
+    /**
+     * Round a double to 3 decimal places without going through a String
+     * @param value value in units
+     * @return the value rounded to 3 decimal places
+     */
+    public static double format3(double value) {
+        return toDouble(round3(value));
+    }
+}
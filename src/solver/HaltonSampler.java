@@ -0,0 +1,66 @@
+package solver;
+
+/**
+ * The Halton sequence: coordinate d of sample i is the radical inverse of i in the d-th prime base.
+ * Consecutive samples fill the unit cube evenly instead of clumping like random ones.
+ * A split sampler continues the sequence from a block far ahead, so every sampler gives its own samples.
+ */
+public class HaltonSampler implements Sampler {
+    private static final int[] BASES = {2, 3, 5, 7, 11, 13};
+    //samples in the block of each sampler split off
+    private static final long BLOCK = 1L << 24;
+
+    private int dimension;
+    //index of the next sample, the first one is 1 as sample 0 is the origin in every base
+    private long index;
+    //number of samplers split off this one so far
+    private int splits = 0;
+
+    /**
+     * @param dimension the number of coordinates of every sample, at most 6
+     */
+    public HaltonSampler(int dimension) {
+        this(dimension, 1);
+    }
+
+    private HaltonSampler(int dimension, long index) {
+        if (dimension < 1 || dimension > BASES.length) {
+            throw new IllegalArgumentException("Halton dimension must be 1 to " + BASES.length);
+        }
+        this.dimension = dimension;
+        this.index = index;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public void next(double[] point) {
+        for (int i = 0; i < point.length; i++) {
+            point[i] = radicalInverse(index, BASES[i]);
+        }
+        index++;
+    }
+
+    @Override
+    public Sampler split() {
+        splits++;
+        return new HaltonSampler(dimension, index + splits * BLOCK);
+    }
+
+    /**
+     * Mirror the digits of i in the given base around the radix point
+     */
+    private static double radicalInverse(long i, int base) {
+        double result = 0;
+        double scale = 1.0 / base;
+        while (i > 0) {
+            result += (i % base) * scale;
+            i /= base;
+            scale /= base;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,223 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap whose entries are addressed by an integer index (e.g. a lattice cell),
+ * supporting O(log n) push, pop and decrease-key.
+ * Entries with equal keys are popped newest first.
+ */
+public class IndexedHeap<T> {
+    //heap position + 1 of each index, 0 if the index is not in the heap
+    private int[] slots;
+    //index stored at each heap position
+    private int[] indices;
+    //key stored at each heap position
+    private double[] keys;
+    //insertion order of each heap position, used for tie breaking
+    private long[] orders;
+    //item stored at each heap position
+    private Object[] items;
+    private int size = 0;
+    private long counter = 0;
+
+    /**
+     * Constructor
+     * @param capacity the number of distinct indices, valid indices are 0 to capacity - 1
+     */
+    public IndexedHeap(int capacity) {
+        slots = new int[capacity];
+        indices = new int[16];
+        keys = new double[16];
+        orders = new long[16];
+        items = new Object[16];
+    }
+
+    /**
+     * @return true if there is no entry in the heap
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of entries in the heap
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if the given index has an entry in the heap
+     * @param index given index
+     * @return true if the index is in the heap
+     */
+    public boolean contains(int index) {
+        return index >= 0 && index < slots.length && slots[index] != 0;
+    }
+
+    /**
+     * Get the item stored for the given index
+     * @param index given index
+     * @return the item, null if the index is not in the heap
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (!contains(index)) {
+            return null;
+        }
+        return (T) items[slots[index] - 1];
+    }
+
+    /**
+     * Get the key stored for the given index
+     * @param index given index
+     * @return the key, +infinity if the index is not in the heap
+     */
+    public double getKey(int index) {
+        if (!contains(index)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return keys[slots[index] - 1];
+    }
+
+    /**
+     * @return the lowest key in the heap, +infinity if the heap is empty
+     */
+    public double peekKey() {
+        if (size == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return keys[0];
+    }
+
+    /**
+     * Add an entry for an index that is not in the heap
+     * @param index the index of the entry
+     * @param key the priority of the entry, lower pops first
+     * @param item the item to store
+     */
+    public void push(int index, double key, T item) {
+        if (size == indices.length) {
+            grow();
+        }
+        int pos = size++;
+        indices[pos] = index;
+        keys[pos] = key;
+        orders[pos] = counter++;
+        items[pos] = item;
+        slots[index] = pos + 1;
+        siftUp(pos);
+    }
+
+    /**
+     * Lower the key of an index already in the heap and replace its item.
+     * The entry keeps its original insertion order.
+     * @param index the index of the entry
+     * @param key the new key, must not be greater than the current key
+     * @param item the new item
+     */
+    public void decreaseKey(int index, double key, T item) {
+        int pos = slots[index] - 1;
+        keys[pos] = key;
+        items[pos] = item;
+        siftUp(pos);
+    }
+
+    /**
+     * Remove and return the item with the lowest key
+     * @return the item with the lowest key, null if the heap is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T pop() {
+        if (size == 0) {
+            return null;
+        }
+        T top = (T) items[0];
+        slots[indices[0]] = 0;
+        size--;
+        if (size > 0) {
+            move(size, 0);
+            siftDown(0);
+        }
+        items[size] = null;
+        return top;
+    }
+
+    /**
+     * Remove every entry, only touching the slots that are in use
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            slots[indices[i]] = 0;
+            items[i] = null;
+        }
+        size = 0;
+        counter = 0;
+    }
+
+    private boolean less(int a, int b) {
+        if (keys[a] != keys[b]) {
+            return keys[a] < keys[b];
+        }
+        return orders[a] > orders[b];
+    }
+
+    private void siftUp(int pos) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!less(pos, parent)) {
+                break;
+            }
+            swap(pos, parent);
+            pos = parent;
+        }
+    }
+
+    private void siftDown(int pos) {
+        while (true) {
+            int left = 2 * pos + 1;
+            if (left >= size) {
+                break;
+            }
+            int child = left;
+            if (left + 1 < size && less(left + 1, left)) {
+                child = left + 1;
+            }
+            if (!less(child, pos)) {
+                break;
+            }
+            swap(pos, child);
+            pos = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int index = indices[a];
+        double key = keys[a];
+        long order = orders[a];
+        Object item = items[a];
+        move(b, a);
+        indices[b] = index;
+        keys[b] = key;
+        orders[b] = order;
+        items[b] = item;
+        slots[index] = b + 1;
+    }
+
+    private void move(int from, int to) {
+        indices[to] = indices[from];
+        keys[to] = keys[from];
+        orders[to] = orders[from];
+        items[to] = items[from];
+        slots[indices[to]] = to + 1;
+    }
+
+    private void grow() {
+        int capacity = indices.length * 2;
+        indices = Arrays.copyOf(indices, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        orders = Arrays.copyOf(orders, capacity);
+        items = Arrays.copyOf(items, capacity);
+    }
+}
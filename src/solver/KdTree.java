@@ -0,0 +1,257 @@
+package solver;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * A k-d tree over robot configurations (x, y, angle) for nearest neighbour queries.
+ * Distances are Euclidean in the three coordinates, where the angle axis wraps around every 2 pi,
+ * so configurations on either side of angle 0 are close.
+ * Neighbours are returned nearest first and one at a time, so a caller that only keeps
+ * some of them (e.g. the ones with a collision free edge) stops as soon as it has enough.
+ * Items can be added and removed one at a time, so the tree follows a roadmap without being built again.
+ */
+public class KdTree<T> {
+    private static final double TWO_PI = 2 * Math.PI;
+    private static final int DIMENSIONS = 3;
+
+    private Node root = null;
+    private int size = 0;
+    //removed items whose nodes are still in the tree
+    private int removedCount = 0;
+
+    /**
+     * Add an item at the given configuration
+     * @param x x of the configuration
+     * @param y y of the configuration
+     * @param angle angle of the configuration in radians, any value
+     * @param item the item stored at the configuration
+     */
+    public void add(double x, double y, double angle, T item) {
+        Node node = new Node(new double[] {x, y, normaliseAngle(angle)}, item);
+        size++;
+        if (root == null) {
+            root = node;
+            return;
+        }
+        Node curr = root;
+        int axis = 0;
+        while (true) {
+            if (node.coords[axis] < curr.coords[axis]) {
+                if (curr.left == null) {
+                    curr.left = node;
+                    return;
+                }
+                curr = curr.left;
+            } else {
+                if (curr.right == null) {
+                    curr.right = node;
+                    return;
+                }
+                curr = curr.right;
+            }
+            axis = (axis + 1) % DIMENSIONS;
+        }
+    }
+
+    /**
+     * Remove an item added at the given configuration. Its node stays in the tree to split the space
+     * and is skipped by searches, so a tree that has lost many items is better built again.
+     * @param x x of the configuration
+     * @param y y of the configuration
+     * @param angle angle of the configuration in radians, any value
+     * @param item the item stored at the configuration
+     * @return true if the item was found and removed
+     */
+    public boolean remove(double x, double y, double angle, T item) {
+        double[] coords = {x, y, normaliseAngle(angle)};
+        Node curr = root;
+        int axis = 0;
+        //the same way down as add, which sends equal coordinates right
+        while (curr != null) {
+            if (!curr.removed && Arrays.equals(curr.coords, coords) && Objects.equals(curr.item, item)) {
+                curr.removed = true;
+                size--;
+                removedCount++;
+                return true;
+            }
+            curr = coords[axis] < curr.coords[axis] ? curr.left : curr.right;
+            axis = (axis + 1) % DIMENSIONS;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of items in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of removed items whose nodes are still in the tree
+     */
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    /**
+     * Iterate over all items ordered by their distance to the given configuration, nearest first
+     * @param x x of the configuration
+     * @param y y of the configuration
+     * @param angle angle of the configuration in radians, any value
+     * @return an iterator that searches the tree lazily as items are taken
+     */
+    public Iterator<T> nearest(double x, double y, double angle) {
+        return new NearestIterator(new double[] {x, y, normaliseAngle(angle)});
+    }
+
+    /**
+     * Get the squared distance between two configurations, the angle taking the shorter way round
+     */
+    public static double distanceSq(double x1, double y1, double angle1, double x2, double y2, double angle2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        double da = angleDistance(normaliseAngle(angle1), normaliseAngle(angle2));
+        return dx * dx + dy * dy + da * da;
+    }
+
+    /**
+     * Get the angle between two normalised angles, the shorter way round the circle
+     */
+    private static double angleDistance(double a, double b) {
+        double d = Math.abs(a - b);
+        return Math.min(d, TWO_PI - d);
+    }
+
+    /**
+     * Normalise an angle to the range [0, 2pi)
+     */
+    private static double normaliseAngle(double angle) {
+        double a = angle % TWO_PI;
+        return a < 0 ? a + TWO_PI : a;
+    }
+
+    private class Node {
+        private double[] coords;
+        private T item;
+        private Node left = null;
+        private Node right = null;
+        private boolean removed = false;
+
+        private Node(double[] coords, T item) {
+            this.coords = coords;
+            this.item = item;
+        }
+    }
+
+    /**
+     * An entry of the best-first search: a subtree with the region of space it covers, or a single item
+     */
+    private class Entry implements Comparable<Entry> {
+        //lower bound of the squared distance to anything in the entry
+        private double distance;
+        private Node node;
+        //true if only the item of node is meant, not its subtree
+        private boolean isItem;
+        //axis the node splits on
+        private int axis;
+        //bounds of the subtree, {min x, max x, min y, max y, min angle, max angle}
+        private double[] region;
+
+        @Override
+        public int compareTo(Entry o) {
+            return Double.compare(distance, o.distance);
+        }
+    }
+
+    /**
+     * Incremental nearest neighbour search (best-first over the regions of the subtrees)
+     */
+    private class NearestIterator implements Iterator<T> {
+        private double[] query;
+        private PriorityQueue<Entry> queue = new PriorityQueue<>();
+
+        private NearestIterator(double[] query) {
+            this.query = query;
+            if (root != null) {
+                double inf = Double.POSITIVE_INFINITY;
+                pushSubtree(root, 0, new double[] {-inf, inf, -inf, inf, 0, TWO_PI});
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            settle();
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return queue.poll().node.item;
+        }
+
+        /**
+         * Open subtrees until the closest entry is a single item
+         */
+        private void settle() {
+            while (!queue.isEmpty() && !queue.peek().isItem) {
+                Entry e = queue.poll();
+                Node node = e.node;
+                if (!node.removed) {
+                    Entry item = new Entry();
+                    item.node = node;
+                    item.isItem = true;
+                    item.distance = distanceSq(query[0], query[1], query[2],
+                            node.coords[0], node.coords[1], node.coords[2]);
+                    queue.add(item);
+                }
+
+                double split = node.coords[e.axis];
+                int next = (e.axis + 1) % DIMENSIONS;
+                if (node.left != null) {
+                    double[] region = e.region.clone();
+                    region[2 * e.axis + 1] = split;
+                    pushSubtree(node.left, next, region);
+                }
+                if (node.right != null) {
+                    double[] region = e.region.clone();
+                    region[2 * e.axis] = split;
+                    pushSubtree(node.right, next, region);
+                }
+            }
+        }
+
+        private void pushSubtree(Node node, int axis, double[] region) {
+            Entry e = new Entry();
+            e.node = node;
+            e.axis = axis;
+            e.region = region;
+            e.distance = boundSq(region);
+            queue.add(e);
+        }
+
+        /**
+         * Get the squared distance from the query to the closest point of a region
+         */
+        private double boundSq(double[] region) {
+            double sum = 0;
+            for (int axis = 0; axis < 2; axis++) {
+                double d = Math.max(0, Math.max(region[2 * axis] - query[axis], query[axis] - region[2 * axis + 1]));
+                sum += d * d;
+            }
+            double a = query[2];
+            if (a < region[4] || a > region[5]) {
+                double d = Math.min(angleDistance(a, region[4]), angleDistance(a, region[5]));
+                sum += d * d;
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * An index of points on a lattice over the unit square, in FixedPoint micro-units, for the RRT trees.
+ * Points are numbered from 0 in the order they are added and kept in square buckets of lattice cells.
+ * A bucket holds at most BUCKET * BUCKET lattice points, so finding a point costs the same however
+ * many points there are, and the nearest point is found by searching the buckets in rings around
+ * the query until no unsearched bucket can hold a nearer point.
+ */
+public class LatticeIndex {
+    //lattice cells along each side of a bucket
+    private static final int BUCKET = 16;
+    //trees this small are searched point by point, which beats searching mostly empty buckets
+    private static final int LINEAR_LIMIT = 64;
+
+    //distance between lattice points in micro-units
+    private int cell;
+    //buckets along each side of the unit square
+    private int side;
+    private int[][] buckets;
+    private int[] bucketSizes;
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+    private int size = 0;
+
+    /**
+     * @param cell the distance between lattice points in micro-units
+     */
+    public LatticeIndex(int cell) {
+        this.cell = cell;
+        int points = FixedPoint.SCALE / cell + 1;
+        this.side = (points + BUCKET - 1) / BUCKET;
+        this.buckets = new int[side * side][];
+        this.bucketSizes = new int[side * side];
+    }
+
+    /**
+     * @return the number of points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param id the id of a point
+     * @return x of the point in micro-units
+     */
+    public int getX(int id) {
+        return xs[id];
+    }
+
+    /**
+     * @param id the id of a point
+     * @return y of the point in micro-units
+     */
+    public int getY(int id) {
+        return ys[id];
+    }
+
+    /**
+     * Add a point, points outside the unit square are kept in the buckets at its edge
+     * @param x x in micro-units
+     * @param y y in micro-units
+     * @return the id of the point
+     */
+    public int add(int x, int y) {
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, 2 * size);
+            ys = Arrays.copyOf(ys, 2 * size);
+        }
+        int id = size++;
+        xs[id] = x;
+        ys[id] = y;
+        int b = bucket(bucketCoord(x), bucketCoord(y));
+        if (buckets[b] == null) {
+            buckets[b] = new int[4];
+        } else if (bucketSizes[b] == buckets[b].length) {
+            buckets[b] = Arrays.copyOf(buckets[b], 2 * bucketSizes[b]);
+        }
+        buckets[b][bucketSizes[b]++] = id;
+        return id;
+    }
+
+    /**
+     * Find a point
+     * @param x x in micro-units
+     * @param y y in micro-units
+     * @return the lowest id of a point at (x, y), -1 if there is none
+     */
+    public int find(int x, int y) {
+        int b = bucket(bucketCoord(x), bucketCoord(y));
+        int found = -1;
+        for (int i = 0; i < bucketSizes[b]; i++) {
+            int id = buckets[b][i];
+            if (xs[id] == x && ys[id] == y && (found < 0 || id < found)) {
+                found = id;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find the nearest point by Manhattan distance
+     * @param x x in micro-units
+     * @param y y in micro-units
+     * @return the lowest id of the nearest points, -1 if there are no points
+     */
+    public int nearest(int x, int y) {
+        if (size <= LINEAR_LIMIT) {
+            int best = -1;
+            long bestDistance = Long.MAX_VALUE;
+            for (int id = 0; id < size; id++) {
+                long distance = distance(id, x, y);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = id;
+                }
+            }
+            return best;
+        }
+
+        int bx = bucketCoord(x);
+        int by = bucketCoord(y);
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int r = 0; r < side; r++) {
+            //the buckets r away from the query bucket, the rows above and below then the columns between
+            for (int i = bx - r; i <= bx + r; i++) {
+                for (int j = by - r; j <= by + r; j += (i == bx - r || i == bx + r || r == 0) ? 1 : 2 * r) {
+                    if (i < 0 || j < 0 || i >= side || j >= side) {
+                        continue;
+                    }
+                    int b = bucket(i, j);
+                    for (int n = 0; n < bucketSizes[b]; n++) {
+                        int id = buckets[b][n];
+                        long distance = distance(id, x, y);
+                        if (distance < bestDistance || (distance == bestDistance && id < best)) {
+                            bestDistance = distance;
+                            best = id;
+                        }
+                    }
+                }
+            }
+            //a point in a bucket r + 1 away is more than r buckets of cells away along one axis
+            if (best >= 0 && bestDistance <= (long) r * BUCKET * cell) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    private long distance(int id, int x, int y) {
+        return Math.abs((long) xs[id] - x) + Math.abs((long) ys[id] - y);
+    }
+
+    private int bucketCoord(int micro) {
+        int b = Math.floorDiv(Math.floorDiv(micro, cell), BUCKET);
+        return Math.max(0, Math.min(side - 1, b));
+    }
+
+    private int bucket(int i, int j) {
+        return i * side + j;
+    }
+}
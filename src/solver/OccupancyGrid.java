@@ -0,0 +1,132 @@
+package solver;
+
+/**
+ * A configuration space occupancy raster for square boxes of one size.
+ * Each lattice point counts how many obstacles a box placed there (bottom left aligned) would overlap,
+ * so checking a position is a single array lookup. Obstacles are inflated by the box size when added
+ * and can be removed again, which lets the raster follow boxes as they are moved.
+ * All coordinates are FixedPoint micro-units.
+ */
+public class OccupancyGrid {
+    //distance between two lattice points
+    private int step;
+    //number of lattice points along each axis
+    private int side;
+    //width of the box this raster is built for
+    private int size;
+    //number of obstacles overlapping a box at each lattice point, row major
+    private int[] counts;
+
+    /**
+     * Constructor, marks every position that would put the box outside the 1x1 workspace
+     * @param step distance between two lattice points
+     * @param side number of lattice points along each axis
+     * @param size width of the box
+     */
+    public OccupancyGrid(int step, int side, int size) {
+        this.step = step;
+        this.side = side;
+        this.size = size;
+        this.counts = new int[side * side];
+
+        // A box at col is out of bounds once col * step + size > 1
+        int last = Math.floorDiv(FixedPoint.SCALE - size, step);
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                if (col > last || row > last) {
+                    counts[row * side + col]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the width of the box this raster is built for
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Add an obstacle to the raster
+     * @param rect rectangle {x, y, width, height}
+     */
+    public void add(int[] rect) {
+        fill(rect, 1);
+    }
+
+    /**
+     * Remove an obstacle previously added to the raster
+     * @param rect rectangle {x, y, width, height}
+     */
+    public void remove(int[] rect) {
+        fill(rect, -1);
+    }
+
+    /**
+     * Check if a box at the given position overlaps an obstacle or leaves the workspace
+     * @param x bottom left x
+     * @param y bottom left y
+     * @return true if the position is blocked, positions off the lattice are always blocked
+     */
+    public boolean isBlocked(int x, int y) {
+        int col = x / step;
+        int row = y / step;
+        if (x < 0 || y < 0 || col * step != x || row * step != y || col >= side || row >= side) {
+            return true;
+        }
+        return counts[row * side + col] > 0;
+    }
+
+    /**
+     * Add delta to every lattice point where a box would overlap the interior of rect,
+     * i.e. rect grown by the box size on its bottom and left sides.
+     */
+    private void fill(int[] rect, int delta) {
+        if (size <= 0 || rect[2] <= 0 || rect[3] <= 0) {
+            return;
+        }
+        // x + size > rect.x && x < rect.x + rect.width
+        int colMin = lowest(rect[0]);
+        int colMax = highest(rect[0], rect[2]);
+        int rowMin = lowest(rect[1]);
+        int rowMax = highest(rect[1], rect[3]);
+        for (int row = rowMin; row <= rowMax; row++) {
+            int offset = row * side;
+            for (int col = colMin; col <= colMax; col++) {
+                counts[offset + col] += delta;
+            }
+        }
+    }
+
+    /**
+     * Get the lowest lattice coordinate i with i * step + size > start.
+     * A box whose far side touches start counts if the double sum does, see FixedPoint.sumExceeds.
+     * @param start low side of the rectangle along the axis
+     * @return the lattice coordinate, at least 0
+     */
+    private int lowest(int start) {
+        int i = Math.floorDiv(start - size, step) + 1;
+        int touching = (i - 1) * step;
+        if (touching + size == start && FixedPoint.sumExceeds(touching, size, start)) {
+            i--;
+        }
+        return Math.max(0, i);
+    }
+
+    /**
+     * Get the highest lattice coordinate i with i * step < start + length.
+     * A box touching the high side of the rectangle counts if the double sum does, see FixedPoint.sumExceeds.
+     * @param start low side of the rectangle along the axis
+     * @param length length of the rectangle along the axis
+     * @return the lattice coordinate, at most side - 1
+     */
+    private int highest(int start, int length) {
+        int i = -Math.floorDiv(-(start + length), step) - 1;
+        int touching = (i + 1) * step;
+        if (touching == start + length && FixedPoint.sumExceeds(start, length, touching)) {
+            i++;
+        }
+        return Math.min(side - 1, i);
+    }
+}
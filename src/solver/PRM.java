@@ -3,20 +3,30 @@ package solver;
 import problem.Box;
 import problem.ProblemSpec;
 import problem.RobotConfig;
-import tester.Tester;
 
-import javax.sound.sampled.Line;
 import java.awt.*;
 import java.awt.geom.Point2D;
-import java.text.DecimalFormat;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * PRM algorithm for sampling configuration of the robot.
  * CONSTRUCT A NEW PRM OBJECT EVERY TIME WHEN WE WANT TO DO SEARCH IN A NEW STATE
  */
 public class PRM {
+    //length of one step of the broken down path, a little under the 0.001 limit
+    private static final double MAX_STEP = 0.0009;
+    //the roadmap cache keeps this many times k neighbours, so most vertices still have k after the boxes block some
+    private static final int CACHED_NEIGHBORS = 2;
+    //samples tried for every vertex wanted where a box was, the box next to it may block most of them
+    private static final int RESAMPLE_ATTEMPTS = 10;
+
     //max number of nodes to put in the roadmap
     private int n;
     //max number of closest neighbors to exam for each config
@@ -24,31 +34,36 @@ public class PRM {
     private RobotConfig init;
     private RobotConfig goal;
 
-    private Tester ts;
     private State states;
+    //collision checks against the current state
+    private CollisionChecker checker;
     private ProblemSpec ps;
+    //Lazy PRM: edges are only collision checked when a path found by BFS uses them
+    private boolean lazy = false;
+    //edges found in collision as edgeKey(from, to), they are not checked again until a box moves off them
+    private Set<Long> invalidEdges = ConcurrentHashMap.newKeySet();
+    //directory of the static roadmap cache, null if the cache is not used
+    private File cacheDir = null;
+    //build the roadmap on the common fork-join pool
+    private boolean parallel = false;
+    //source of the samples (x, y, angle), split into an independent stream for every sampling task
+    private Sampler sampler = new RandomSampler(3);
+    //the roadmap of the last buildMap, kept for later queries and repaired as the boxes move
+    private Roadmap roadmap;
+    //nearest neighbour index over the vertex ids of treeMap
+    private KdTree<Integer> tree;
+    private Roadmap treeMap;
+    //configs of the cached vertices the boxes blocked, x, y and angle one after another,
+    //they are put back into the roadmap once the boxes move off them
+    private double[] blocked = new double[0];
 
     //constructs PRM and load problem spec
     public PRM(ProblemSpec problem) {
         this.ps = problem;
 
-        states = new State(problem);
-        this.ts = new Tester(problem);
+        setStates(new State(problem));
     }
 
-//    //Constructs with maxnode, maxNeighbors, init and goal config
-//    //TODO: TO BE FULLY IMPLEMENTED
-//    public PRM(ProblemSpec problem, State s, int maxNode, int maxNeighbor, RobotConfig init, RobotConfig goal) {
-//        this.ps = problem;
-//        this.n = maxNode;
-//        this.k = maxNeighbor;
-//        this.init = init;
-//        this.goal = goal;
-//
-//        this.states = s;
-//        this.ts = new Tester(problem);
-//    }
-
     /**
      * Constructor
      * @param problem the problem spec we are dealing with
@@ -65,8 +80,7 @@ public class PRM {
         this.setInit(init);
         this.setGoal(goal);
 
-        this.states = initState;
-        this.ts = new Tester(problem);
+        setStates(initState);
     }
 
 
@@ -97,70 +111,401 @@ public class PRM {
         this.goal = rc;
     }
 
+    /**
+     * Turn Lazy PRM on or off. A lazy roadmap connects every vertex to its k nearest vertices
+     * without checking the edges, and BFS only checks the edges of the paths it finds.
+     * @param lazy true for Lazy PRM
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Turn the parallel roadmap build on or off. Sampling and neighbour connection are then split
+     * into tasks on the common fork-join pool, each sampling task with a sampler split off the PRM's sampler.
+     * @param parallel true to build the roadmap in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Set the source of the sampled vertices, e.g. a seeded RandomSampler for reproducible roadmaps
+     * or a low-discrepancy sequence that covers the free space with fewer vertices
+     * @param sampler a sampler of at least 3 dimensions, used for x, y and angle
+     */
+    public void setSampler(Sampler sampler) {
+        if (sampler.getDimension() < 3) {
+            throw new IllegalArgumentException("PRM needs a sampler of 3 dimensions");
+        }
+        this.sampler = sampler;
+    }
+
+    /**
+     * Use a roadmap cache. The part of the roadmap that only depends on the static obstacles is loaded
+     * from the directory if an earlier run saved it for the same geometry, and saved there otherwise.
+     * @param dir the cache directory, null to turn the cache off
+     */
+    public void setCacheDirectory(File dir) {
+        this.cacheDir = dir;
+    }
+
 
     /**
      * Build the graph for robotConfig with fixed collision region.
-     * @return a graph of robotConfig in the form of map
+     * The init config is vertex 0 and the goal config vertex 1.
+     * @return a graph of robotConfig in the form of a roadmap
      */
-    public HashMap<RobotConfig, Set<RobotConfig>> buildMap() {
-        // Hashmap to hold the vertices and their k neighbors
-        HashMap<RobotConfig, Set<RobotConfig>> roadmap = new HashMap<RobotConfig, Set<RobotConfig>>();
+    public Roadmap buildMap() {
+        if (cacheDir != null) {
+            return buildMapFromCache();
+        }
+        // Roadmap to hold the vertices and their k neighbors
+        //vertices are numbered in the order they were sampled, so a seeded sampler
+        //gives the same roadmap and paths on every run
+        Roadmap roadmap = new Roadmap();
         // Initialize start and end RobotConfigs
 
         // Add in start and end RobotConfigs to the roadmap
-        roadmap.put(this.init, null);
-        roadmap.put(this.goal, null);
+        roadmap.addVertex(this.init);
+        roadmap.addVertex(this.goal);
         // Generate N random configurations
 
+        this.roadmap = roadmap;
+        blocked = new double[0];
+        sampleAndConnect(roadmap, k, checker, lazy);
+        return roadmap;
+    }
+
+    /**
+     * Sample n vertices into the roadmap and connect every vertex to its nearest neighbours
+     * @param roadmap the roadmap to fill, it may already hold some vertices
+     * @param neighbors the number of neighbours of every vertex
+     * @param checker collision checks for the vertices and edges
+     * @param lazyEdges true to leave the edges unchecked for BFS
+     */
+    private void sampleAndConnect(Roadmap roadmap, int neighbors, CollisionChecker checker, boolean lazyEdges) {
+        if (parallel) {
+            buildMapInParallel(roadmap, neighbors, checker, lazyEdges);
+            return;
+        }
+
         //sample n random robotConfig
-        while(roadmap.size() - 2 < this.n) {
-            RobotConfig sample = randomRobotConfig();
+        double[] sample = new double[3];
+        for (int count = 0; count < this.n; ) {
+            randomRobotConfig(sampler, sample);
             //check if this sample config collides with any obstacles,
             //Add the sample to roadMap/graph if no collision
-            if(this.states.robotCollisionFree(sample)) {
-                roadmap.put(sample, null);
+            if(checker.isFree(sample[0], sample[1], sample[2])) {
+                roadmap.addVertex(sample[0], sample[1], sample[2]);
+                count++;
             }
         }
 
         // Getting the k nearest neighbors
-        for (RobotConfig rc1 : roadmap.keySet()) {
-           newconnectKthNearestNeighbors(roadmap, rc1);
+        indexVertices(roadmap);
+        CollisionChecker edgeChecker = lazyEdges ? null : checker;
+        for (int v = 0; v < roadmap.size(); v++) {
+            setNeighbors(roadmap, v, nearestNeighbors(v, false, neighbors, edgeChecker));
+        }
+    }
+
+    /**
+     * Build the roadmap from the static roadmap in the cache directory, sampling and saving it first
+     * if it is not there. The cached roadmap only knows the static obstacles, and holds more neighbours
+     * than needed, nearest first. Each vertex keeps the first k of them that no moving box or obstacle
+     * blocks, which are the k nearest reachable ones, so only the moving boxes are checked here.
+     * @return a graph of robotConfig in the form of a roadmap
+     */
+    private Roadmap buildMapFromCache() {
+        long key = RoadmapCache.key(ps, n, k, sampler.getName());
+        File file = RoadmapCache.file(cacheDir, key);
+        Roadmap roadmap = null;
+        try {
+            roadmap = RoadmapCache.load(file, key);
+        } catch (IOException e) {
+            System.out.println("Roadmap cache not read: " + e.getMessage());
+        }
+
+        State current = this.states;
+        if (roadmap == null) {
+            State empty = new State(ps.getInitialRobotConfig(), new ArrayList<Box>(), new ArrayList<Box>());
+            empty.setProblemSpec(ps);
+            roadmap = new Roadmap();
+            //the cached edges are checked eagerly, so the cache only holds valid edges
+            sampleAndConnect(roadmap, CACHED_NEIGHBORS * k, new CollisionChecker(ps, empty), false);
+            try {
+                RoadmapCache.save(file, key, roadmap);
+            } catch (IOException e) {
+                System.out.println("Roadmap cache not written: " + e.getMessage());
+            }
+        }
+
+        //the cached roadmap is cut down to this one in place
+        List<Rectangle2D> boxRects = new ArrayList<>();
+        for (Box b : current.getBoxes()) {
+            boxRects.add(b.getRect());
+        }
+        for (Box b : current.getMovingObst()) {
+            boxRects.add(b.getRect());
+        }
+        CollisionChecker boxes = new CollisionChecker(ps, boxRects);
+        BitSet removed = new BitSet();
+        for (int v = roadmap.size() - 1; v >= 0; v--) {
+            if (!boxes.isFree(roadmap.getX(v), roadmap.getY(v), roadmap.getAngle(v))) {
+                removed.set(v);
+            }
+        }
+        blocked = new double[3 * removed.cardinality()];
+        int slot = 0;
+        for (int v = removed.nextSetBit(0); v >= 0; v = removed.nextSetBit(v + 1)) {
+            blocked[slot++] = roadmap.getX(v);
+            blocked[slot++] = roadmap.getY(v);
+            blocked[slot++] = roadmap.getAngle(v);
+        }
+        for (int v = removed.length() - 1; v >= 0; v = removed.previousSetBit(v - 1)) {
+            roadmap.removeVertex(v);
+        }
+        //the ids of removed vertices are given to init and goal
+        invalidEdges.removeIf(edge -> removed.get((int) (edge >>> 32)) || removed.get((int) (long) edge));
+        BitSet reconnect = new BitSet();
+        int[] neighbors = new int[k];
+        for (int v = 0; v < roadmap.size(); v++) {
+            if (!roadmap.contains(v)) {
+                continue;
+            }
+            int count = 0;
+            for (int i = 0; i < roadmap.degree(v) && count < k; i++) {
+                int w = roadmap.neighbor(v, i);
+                if (roadmap.contains(w)
+                        && !(overlaps(sweptBounds(roadmap, v, w), boxRects) && !isEdgeFree(boxes, roadmap, v, w))) {
+                    neighbors[count++] = w;
+                }
+            }
+            roadmap.setNeighbors(v, neighbors, count);
+            if (count < k) {
+                reconnect.set(v);
+            }
+        }
+        roadmap.compact();
+
+        // Add in start and end RobotConfigs, with edges both ways as they are not in the cache
+        int initId = roadmap.addVertex(this.init);
+        int goalId = roadmap.addVertex(this.goal);
+        this.roadmap = roadmap;
+        indexVertices(roadmap);
+        //too many cached neighbours blocked, search all vertices, checked eagerly like the cached edges
+        for (int v = reconnect.nextSetBit(0); v >= 0; v = reconnect.nextSetBit(v + 1)) {
+            setNeighbors(roadmap, v, nearestNeighbors(v, true, k, checker));
+        }
+        if (lazy) {
+            //every edge so far has been checked
+            roadmap.setAllChecked();
         }
+        connectBothWays(roadmap, initId);
+        connectBothWays(roadmap, goalId);
         return roadmap;
     }
 
+    /**
+     * Sample and connect the vertices of the roadmap on the common fork-join pool.
+     * Every task samples its share of the n vertices, then the vertices are split into chunks
+     * whose neighbours are found in parallel and set in the roadmap once all are found.
+     * @param roadmap the roadmap holding init and goal, filled with the other vertices and all edges
+     * @param neighbors the number of neighbours of every vertex
+     * @param checker collision checks for the vertices and edges
+     * @param lazyEdges true to leave the edges unchecked for BFS
+     */
+    private void buildMapInParallel(Roadmap roadmap, int neighbors, CollisionChecker checker, boolean lazyEdges) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int tasks = Math.max(1, pool.getParallelism());
+
+        //sample n collision free robotConfigs
+        List<ForkJoinTask<double[]>> samplers = new ArrayList<>();
+        for (int t = 0; t < tasks; t++) {
+            final int count = this.n / tasks + (t < this.n % tasks ? 1 : 0);
+            final Sampler rng = sampler.split();
+            samplers.add(pool.submit(() -> sampleFreeConfigs(count, rng, checker)));
+        }
+        for (ForkJoinTask<double[]> sampler : samplers) {
+            double[] samples = sampler.join();
+            for (int i = 0; i < samples.length; i += 3) {
+                roadmap.addVertex(samples[i], samples[i + 1], samples[i + 2]);
+            }
+        }
+
+        // Getting the k nearest neighbors, a few chunks per thread to even out the work
+        indexVertices(roadmap);
+        CollisionChecker edgeChecker = lazyEdges ? null : checker;
+        int vertices = roadmap.size();
+        int[][] edges = new int[vertices][];
+        int chunk = Math.max(1, (vertices + 4 * tasks - 1) / (4 * tasks));
+        List<ForkJoinTask<?>> connectors = new ArrayList<>();
+        for (int from = 0; from < vertices; from += chunk) {
+            final int start = from;
+            final int end = Math.min(from + chunk, vertices);
+            connectors.add(pool.submit(() -> {
+                for (int v = start; v < end; v++) {
+                    edges[v] = nearestNeighbors(v, false, neighbors, edgeChecker);
+                }
+            }));
+        }
+        for (ForkJoinTask<?> connector : connectors) {
+            connector.join();
+        }
+        for (int v = 0; v < vertices; v++) {
+            setNeighbors(roadmap, v, edges[v]);
+        }
+    }
 
     /**
-     * Get the k nearest reachable neighbor vertices and connect them
+     * Sample collision free robot configs
+     * @param count number of configs to sample
+     * @param rng sampler used only by the calling task
+     * @param checker collision checks for the configs
+     * @return the x, y and angle of each sampled config one after another
+     */
+    private double[] sampleFreeConfigs(int count, Sampler rng, CollisionChecker checker) {
+        double[] samples = new double[3 * count];
+        double[] sample = new double[3];
+        for (int i = 0; i < count; ) {
+            randomRobotConfig(rng, sample);
+            if (checker.isFree(sample[0], sample[1], sample[2])) {
+                System.arraycopy(sample, 0, samples, 3 * i++, 3);
+            }
+        }
+        return samples;
+    }
+
+
+    /**
+     * Get the k nearest reachable neighbor vertices and connect them.
+     * Candidates come from the k-d tree nearest first, so only the edges to the closest
+     * vertices are collision checked instead of the edges to every vertex.
      * @param roadmap given roadmap
+     * @param v the vertex to connect
      */
-    private void newconnectKthNearestNeighbors(HashMap<RobotConfig, Set<RobotConfig>> roadmap, RobotConfig rc1) {
-        RobotComparator comp = new RobotComparator();
-        comp.setRobot(rc1);
-        //PriorityQueue for holding the k closest neighbor RobotConfigs
-        PriorityQueue<RobotConfig> pq = new PriorityQueue<RobotConfig>(k, comp);
+    private void newconnectKthNearestNeighbors(Roadmap roadmap, int v) {
+        if (treeMap != roadmap) {
+            indexVertices(roadmap);
+        }
+        //add edges of this vertex to roadmap
+        setNeighbors(roadmap, v, nearestNeighbors(v, false));
+    }
 
-        //set of k nearest neighbors for rc1
-        Set<RobotConfig> neighbors = new HashSet<>();
-        for(RobotConfig rc2 : roadmap.keySet()) {
+    /**
+     * Get the k nearest reachable vertices of the indexed roadmap, checked against the current state
+     * unless the roadmap is lazy
+     * @param v the vertex to connect
+     * @param keepEdges true if the edges the vertex already has are known to be reachable, they are not checked again
+     * @return the ids of the neighbours, nearest first
+     */
+    private int[] nearestNeighbors(int v, boolean keepEdges) {
+        return nearestNeighbors(v, keepEdges, k, lazy ? null : checker);
+    }
+
+    /**
+     * Get the nearest reachable vertices of the indexed roadmap, recording the edges found in collision.
+     * Only reads the roadmap and the index, so it can be called from several threads at once.
+     * @param v the vertex to connect
+     * @param keepEdges true if the edges the vertex already has are known to be reachable, they are not checked again
+     * @param wanted the number of neighbours to find
+     * @param edgeChecker collision checks for the edges, null to leave them to BFS as in a lazy roadmap
+     * @return the ids of the neighbours, nearest first
+     */
+    private int[] nearestNeighbors(int v, boolean keepEdges, int wanted, CollisionChecker edgeChecker) {
+        Roadmap map = treeMap;
+        Iterator<Integer> candidates = tree.nearest(map.getX(v), map.getY(v), map.getAngle(v));
+
+        //nearest neighbors for v, nearest first
+        int[] neighbors = new int[wanted];
+        int count = 0;
+        while (count < wanted && candidates.hasNext()) {
+            int w = candidates.next();
             //no need to set the vertex itself as its neighbor
-            if (rc2.equals(rc1)) { continue; }
+            if (w == v) { continue; }
+            //an edge already found in collision
+            if (invalidEdges.contains(edgeKey(v, w))) { continue; }
 
-            //if the neighbor vertex is reachable, add it to pq
-            if(isPathCollisionFree(rc1, rc2)) {
-                pq.add(rc2);
+            //if the neighbor vertex is reachable, it is the next nearest reachable one,
+            //a lazy roadmap leaves the check to BFS
+            if(edgeChecker == null || (keepEdges && map.indexOfEdge(v, w) >= 0) || isEdgeFree(edgeChecker, map, v, w)) {
+                neighbors[count++] = w;
+            } else {
+                invalidEdges.add(edgeKey(v, w));
             }
         }
+        return count == wanted ? neighbors : Arrays.copyOf(neighbors, count);
+    }
+
+    /**
+     * Connect a vertex of the indexed roadmap to its k nearest reachable neighbours with edges both ways,
+     * as the vertices connected before it could not choose it as a neighbour
+     * @param roadmap the indexed roadmap
+     * @param v the vertex to connect
+     */
+    private void connectBothWays(Roadmap roadmap, int v) {
+        int[] neighbors = nearestNeighbors(v, false);
+        for (int w : neighbors) {
+            roadmap.addEdge(w, v);
+        }
+        setNeighbors(roadmap, v, neighbors);
+    }
+
+    private static void setNeighbors(Roadmap roadmap, int v, int[] neighbors) {
+        roadmap.setNeighbors(v, neighbors, neighbors.length);
+    }
+
+    /**
+     * Get the key of an edge in invalidEdges
+     */
+    private static long edgeKey(int from, int to) {
+        return (long) from << 32 | (to & 0xffffffffL);
+    }
+
+    /**
+     * Replace a lazy edge found in collision with an edge to the next nearest vertex,
+     * so the vertex keeps k candidate edges like an eagerly checked roadmap does
+     * @param roadmap given roadmap
+     * @param v the vertex that lost an edge
+     */
+    private void refillNeighbors(Roadmap roadmap, int v) {
+        if (treeMap != roadmap) {
+            indexVertices(roadmap);
+        }
+        setNeighbors(roadmap, v, nearestNeighbors(v, true));
+    }
 
-        //added k nearest reachable neighbor to neighbor set
-        for (int i = 0; i < k; ++i) {
-            if(pq.peek() != null) {
-                neighbors.add(pq.poll());
+    /**
+     * Build the nearest neighbour index over all vertices of the roadmap
+     * @param roadmap given roadmap
+     */
+    private void indexVertices(Roadmap roadmap) {
+        tree = new KdTree<>();
+        treeMap = roadmap;
+        for (int v = 0; v < roadmap.size(); v++) {
+            if (roadmap.contains(v)) {
+                indexVertex(roadmap, v);
             }
         }
+    }
 
-        //add edges of this vertex to roadmap
-        roadmap.put(rc1, neighbors);
+    /**
+     * Add a vertex of the indexed roadmap to the nearest neighbour index
+     * @param roadmap the indexed roadmap
+     * @param v the id of the vertex
+     */
+    private void indexVertex(Roadmap roadmap, int v) {
+        tree.add(roadmap.getX(v), roadmap.getY(v), roadmap.getAngle(v), v);
+    }
+
+    /**
+     * Take a vertex of the indexed roadmap out of the nearest neighbour index, before it is removed from the roadmap
+     * @param roadmap the indexed roadmap
+     * @param v the id of the vertex
+     */
+    private void unindexVertex(Roadmap roadmap, int v) {
+        tree.remove(roadmap.getX(v), roadmap.getY(v), roadmap.getAngle(v), v);
     }
 
     /**
@@ -168,224 +513,476 @@ public class PRM {
      * @param roadmap the roadmap that the node will be added to
      * @param rc the robotConfig to be added
      */
-    public void addNodeToGraph(HashMap<RobotConfig, Set<RobotConfig>> roadmap, RobotConfig rc) {
-        if(this.states.robotCollisionFree(rc)) {
-            roadmap.put(rc, null);
+    public void addNodeToGraph(Roadmap roadmap, RobotConfig rc) {
+        if(checker.isFree(rc)) {
+            int v = roadmap.addVertex(rc);
+            if (treeMap == roadmap) {
+                indexVertex(roadmap, v);
+            }
+            newconnectKthNearestNeighbors(roadmap, v);
         }
-
-        newconnectKthNearestNeighbors(roadmap, rc);
     }
 
     /**
-     * BFS search algorithm for searching path from root to goal in the given graph/roadmap
-     * @param map given graph/roadmap
-     * @param rootConf root robotConfig
-     * @param goalConf goal robotConfig
-     * @return linkedList of robotConfig
+     * Move the roadmap of buildMap to a new state, keeping everything the moved boxes do not touch.
+     * Vertices in collision at the new box positions are removed, edges whose swept region overlaps
+     * a new box position are checked again, and vertices with an edge in collision through an old
+     * box position are connected again. The old box positions held no vertices, so they are sampled
+     * as densely as the rest of the workspace, and the cached vertices a box blocked there are put back.
+     * @param newState the state with the boxes and moving obstacles at their new positions
      */
-    public LinkedList<State> BFS(HashMap<RobotConfig, Set<RobotConfig>> map, RobotConfig rootConf, RobotConfig goalConf) {
-        // Fringe
-        Queue<RobotConfig> fringe = new LinkedList<RobotConfig>();
-        // Map to store backchain information
-        HashMap<RobotConfig, RobotConfig> reachedFrom = new HashMap<RobotConfig, RobotConfig>();
-        // Start node has no parent, add to fringe
-        reachedFrom.put(rootConf, null);
-        fringe.add(rootConf);
-        while (!fringe.isEmpty()) {
-            // Get node from fringe
-            RobotConfig currentNode = fringe.remove();
-            // Goal test
-            if (currentNode.equals(goalConf)) {
-//                return backchainz(currentNode, reachedFrom);
-                LinkedList<RobotConfig> stepPath = new LinkedList<>(fullRobotPathBreakDown(backchainz(currentNode, reachedFrom)));
-                LinkedList<State> stateStepPath = toStatePath(stepPath, this.states);
-                return stateStepPath;
+    public void updateState(State newState) {
+        List<Rectangle2D> oldRects = new ArrayList<>();
+        List<Rectangle2D> newRects = new ArrayList<>();
+        findMovedBoxes(this.states.getBoxes(), newState.getBoxes(), oldRects, newRects);
+        findMovedBoxes(this.states.getMovingObst(), newState.getMovingObst(), oldRects, newRects);
+        setStates(newState);
+        if (roadmap == null || newRects.isEmpty()) {
+            return;
+        }
+
+        CollisionChecker newBoxes = new CollisionChecker(ps, newRects);
+        CollisionChecker oldBoxes = new CollisionChecker(ps, oldRects);
+        //vertices now in collision
+        BitSet removed = new BitSet();
+        for (int v = 0; v < roadmap.size(); v++) {
+            if (roadmap.contains(v) && !newBoxes.isFree(roadmap.getX(v), roadmap.getY(v), roadmap.getAngle(v))) {
+                removed.set(v);
             }
-            // Get the set of neighbors of the current node
-            Set<RobotConfig> successors = map.get(currentNode);
-            //Check each neighbor
-            for (RobotConfig node : successors) {
-                // If not visited
-                if (!reachedFrom.containsKey(node)) {
-                    reachedFrom.put(node, currentNode);
-                    fringe.add(node);
+        }
+        BitSet reconnect = new BitSet();
+        //edges that were in collision with a box that moved away, they may be free now
+        invalidEdges.removeIf(edge -> {
+            int from = (int) (edge >>> 32);
+            int to = (int) (long) edge;
+            if (removed.get(from) || removed.get(to)) {
+                return true;
+            }
+            if (overlaps(sweptBounds(roadmap, from, to), oldRects) && !isEdgeFree(oldBoxes, roadmap, from, to)) {
+                reconnect.set(from);
+                return true;
+            }
+            return false;
+        });
+        if (treeMap != roadmap) {
+            indexVertices(roadmap);
+        }
+        for (int v = removed.nextSetBit(0); v >= 0; v = removed.nextSetBit(v + 1)) {
+            unindexVertex(roadmap, v);
+            roadmap.removeVertex(v);
+        }
+
+        for (int v = 0; v < roadmap.size(); v++) {
+            if (!roadmap.contains(v)) {
+                continue;
+            }
+            if (roadmap.removeEdgesTo(v, removed) > 0) {
+                reconnect.set(v);
+            }
+            //edges that now cross a box, the rest of the world is unchanged so only the moved boxes are tested.
+            //lazy edges not checked yet are left to BFS
+            for (int i = roadmap.degree(v) - 1; i >= 0; i--) {
+                int w = roadmap.neighbor(v, i);
+                if ((!lazy || roadmap.isChecked(v, i))
+                        && overlaps(sweptBounds(roadmap, v, w), newRects) && !isEdgeFree(newBoxes, roadmap, v, w)) {
+                    roadmap.removeEdge(v, w);
+                    invalidEdges.add(edgeKey(v, w));
+                    reconnect.set(v);
                 }
             }
         }
-        //No solution
-        return null;
-    }
-    
-    
-    private LinkedList<RobotConfig> backchainz(RobotConfig node,
-                                              HashMap<RobotConfig, RobotConfig> parent) {
-        LinkedList<RobotConfig> solution = new LinkedList<RobotConfig>();
-        solution.addFirst(node);
 
-        while (parent.get(node) != null) {
-            solution.addFirst(parent.get(node));
-            node = parent.get(node);
+        //the removed vertices only stay in the index as splitters, build it again once they outnumber the rest
+        if (tree.getRemovedCount() > tree.size()) {
+            indexVertices(roadmap);
+        }
+        //cached vertices the moved boxes blocked, the rest stay blocked by boxes that did not move
+        int kept = 0;
+        for (int i = 0; i < blocked.length; i += 3) {
+            if (!oldBoxes.isFree(blocked[i], blocked[i + 1], blocked[i + 2])
+                    && checker.isFree(blocked[i], blocked[i + 1], blocked[i + 2])) {
+                int v = roadmap.addVertex(blocked[i], blocked[i + 1], blocked[i + 2]);
+                indexVertex(roadmap, v);
+                connectBothWays(roadmap, v);
+            } else {
+                System.arraycopy(blocked, i, blocked, kept, 3);
+                kept += 3;
+            }
+        }
+        if (kept < blocked.length) {
+            blocked = Arrays.copyOf(blocked, kept);
+        }
+        //one at a time, so a sample is connected to the ones before it only once
+        double[] sample = new double[3];
+        for (Rectangle2D rect : oldRects) {
+            int wanted = (int) Math.round(n * rect.getWidth() * rect.getHeight());
+            int count = 0;
+            for (int tries = 0; count < wanted && tries < RESAMPLE_ATTEMPTS * wanted; tries++) {
+                randomRobotConfig(sampler, rect, sample);
+                if (checker.isFree(sample[0], sample[1], sample[2])) {
+                    int v = roadmap.addVertex(sample[0], sample[1], sample[2]);
+                    indexVertex(roadmap, v);
+                    connectBothWays(roadmap, v);
+                    count++;
+                }
+            }
+        }
+        for (int v = reconnect.nextSetBit(0); v >= 0; v = reconnect.nextSetBit(v + 1)) {
+            if (roadmap.contains(v)) {
+                setNeighbors(roadmap, v, nearestNeighbors(v, true));
+            }
         }
-        return solution;
     }
 
-
     /**
-     * Sample an random robot config uniformly
-     * @return an random robot config
-     *
+     * Find a path on the roadmap of buildMap between two configs. Configs that are not vertices yet are
+     * connected to the roadmap for this query only, so the roadmap can be reused by later queries.
+     * @param rootConf root robotConfig
+     * @param goalConf goal robotConfig
+     * @return the states from root to goal, null if there is no path
      */
-    private RobotConfig randomRobotConfig() {
-        Point2D p = randomPoint();
-        Double angle = randomAngle();
-        return new RobotConfig(p, angle);
-    }
+    public List<State> query(RobotConfig rootConf, RobotConfig goalConf) {
+        if (treeMap != roadmap) {
+            indexVertices(roadmap);
+        }
+        int root = roadmap.indexOf(rootConf);
+        int goal = roadmap.indexOf(goalConf);
+        BitSet added = new BitSet();
+        if (root < 0) {
+            root = roadmap.addVertex(rootConf);
+            indexVertex(roadmap, root);
+            added.set(root);
+        }
+        if (goal < 0) {
+            goal = roadmap.addVertex(goalConf);
+            indexVertex(roadmap, goal);
+            added.set(goal);
+        }
+        if (added.get(root)) {
+            setNeighbors(roadmap, root, nearestNeighbors(root, false));
+        }
+        if (added.get(goal)) {
+            //edges are followed one way, so the goal needs edges from its neighbours
+            connectBothWays(roadmap, goal);
+        }
+
+        List<State> path = findPath(roadmap, root, goal, true);
 
+        if (!added.isEmpty()) {
+            for (int v = 0; v < roadmap.size(); v++) {
+                if (roadmap.contains(v)) {
+                    roadmap.removeEdgesTo(v, added);
+                }
+            }
+            invalidEdges.removeIf(edge -> added.get((int) (edge >>> 32)) || added.get((int) (long) edge));
+            //the highest id first, so both ids are free again
+            for (int v = added.length() - 1; v >= 0; v = added.previousSetBit(v - 1)) {
+                unindexVertex(roadmap, v);
+                roadmap.removeVertex(v);
+            }
+        }
+        return path;
+    }
 
     /**
-     * Generate an random point with coords from 0 to 1
-     * @return an random point with coords from 0 to 1 inclusively, 0.001 unit
+     * Set the current state and the collision checks against it
+     * @param s the state
      */
-    private Point2D randomPoint() {
-        int xInt = new Random().nextInt(1000);
-        int yInt = new Random().nextInt(1000);
-        Double x = (Double)(xInt/1000.0);
-        Double y = (Double)(yInt/1000.0);
-        return new Point2D.Double(x, y);
+    private void setStates(State s) {
+        this.states = s;
+        this.checker = new CollisionChecker(ps, s);
     }
 
     /**
-     * Generate an random angle range from 0 - pi
-     * @return an random angle range from 0 - pi inclusively, 0.001 unit
-     * TODO: MIGHT BE WRONG TO SAMPLE ANGLE LIKE THIS
+     * Collect the regions of the boxes whose positions differ between two lists of the same boxes
+     * @param oldBoxes boxes before moving
+     * @param newBoxes the same boxes after moving
+     * @param oldRects collects the old regions of the moved boxes
+     * @param newRects collects the new regions of the moved boxes
      */
-    private  Double randomAngle() {
-        int radInt = new Random().nextInt((int)(1000 * Math.PI));
-        Double rad = (Double)(radInt/1000.0);
+    private static void findMovedBoxes(List<Box> oldBoxes, List<Box> newBoxes,
+                                       List<Rectangle2D> oldRects, List<Rectangle2D> newRects) {
+        for (int i = 0; i < Math.min(oldBoxes.size(), newBoxes.size()); i++) {
+            Rectangle2D before = oldBoxes.get(i).getRect();
+            Rectangle2D after = newBoxes.get(i).getRect();
+            if (!before.equals(after)) {
+                oldRects.add(before);
+                newRects.add(after);
+            }
+        }
+    }
 
-//        Double rad = new Random().nextDouble();
-        rad = (double)Math.round(rad * 1000d) / 1000d;
-        return rad;
+    /**
+     * Get a bounding box of the area the robot sweeps along an edge
+     * @param map the roadmap
+     * @param v vertex 1
+     * @param w vertex 2
+     * @return the region covering every robot position on the edge
+     */
+    private Rectangle2D sweptBounds(Roadmap map, int v, int w) {
+        double half = ps.getRobotWidth() / 2;
+        double minX = Math.min(map.getX(v), map.getX(w)) - half;
+        double minY = Math.min(map.getY(v), map.getY(w)) - half;
+        double maxX = Math.max(map.getX(v), map.getX(w)) + half;
+        double maxY = Math.max(map.getY(v), map.getY(w)) + half;
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
     }
 
+    private static boolean overlaps(Rectangle2D region, List<Rectangle2D> rects) {
+        for (Rectangle2D rect : rects) {
+            if (region.intersects(rect)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-//    /**
-//     * Check if given robot config has collision with all of the movable objects
-//     * in given state s
-//     * @param rc robot config
-//     * @param s given state for checking
-//     * @return true if has no collision
-//     *
-//     */
-//    private boolean robotCollisionFree(RobotConfig rc, State s) {
-//        Tester ts = new Tester(this.ps);
-//
-//        List<Box> movables = new ArrayList<>();
-//        movables.addAll(s.getBoxes());
-//        movables.addAll(s.getMovingObst());
-//        //System.out.println("Size of Obs: " + movables.size() + "\n");
-//        return ts.hasCollision(rc, movables);
-//    }
+    private static boolean isEdgeFree(CollisionChecker checker, Roadmap map, int v, int w) {
+        return checker.isEdgeFree(map.getX(v), map.getY(v), map.getAngle(v), map.getX(w), map.getY(w), map.getAngle(w));
+    }
 
+    /**
+     * BFS search algorithm for searching path from root to goal in the given graph/roadmap
+     * @param map given graph/roadmap
+     * @param rootConf root robotConfig, a vertex of the roadmap
+     * @param goalConf goal robotConfig, a vertex of the roadmap
+     * @return the states of the path in steps of at most 0.001, null if there is no path
+     */
+    public List<State> BFS(Roadmap map, RobotConfig rootConf, RobotConfig goalConf) {
+        return findPath(map, map.indexOf(rootConf), map.indexOf(goalConf), false);
+    }
 
     /**
-     * Convert the path of robot to path of state.
-     * @param robotPath the robot path that we are going to convert
-     * @param s the state before moving any boxes
-     * @return a list of state
+     * A* search for the path from root to goal with the fewest steps in the given graph/roadmap.
+     * An edge costs the number of steps it is broken into, so long hops are avoided.
+     * @param map given graph/roadmap
+     * @param rootConf root robotConfig, a vertex of the roadmap
+     * @param goalConf goal robotConfig, a vertex of the roadmap
+     * @return the states of the path in steps of at most 0.001, null if there is no path
      */
-    private LinkedList<State> toStatePath(List<RobotConfig> robotPath, State s) {
-        LinkedList<State> statePath = new LinkedList<>();
-        for(RobotConfig rc : robotPath) {
-            statePath.add(new State(rc, s.getBoxes(), s.getMovingObst()));
-        }
-        return statePath;
+    public List<State> shortestPath(Roadmap map, RobotConfig rootConf, RobotConfig goalConf) {
+        return findPath(map, map.indexOf(rootConf), map.indexOf(goalConf), true);
     }
 
+    private List<State> findPath(Roadmap map, int root, int goal, boolean weighted) {
+        if (root < 0 || goal < 0) {
+            return null;
+        }
+        int[] path = weighted ? searchShortest(map, root, goal) : searchVertices(map, root, goal);
+        // Lazy PRM: check the edges of the path, drop the ones in collision and search again
+        while (lazy && path != null && removeInvalidEdges(map, path)) {
+            path = weighted ? searchShortest(map, root, goal) : searchVertices(map, root, goal);
+        }
+        if (path == null) {
+            //No solution
+            return null;
+        }
+        List<RobotConfig> waypoints = new ArrayList<>(path.length);
+        for (int v : path) {
+            waypoints.add(map.getConfig(v));
+        }
+        //the steps are computed as they are read, so a long path takes no more memory than its vertices
+        return new StepPath(waypoints, this.states);
+    }
 
     /**
-     * Check if the path between RobotConfig is collision free
-     * @param r1 RobotConfig 1
-     * @param r2 RobotConfig 1
-     * @return true if the path is collision free
+     * BFS over the roadmap vertices
+     * @param map given graph/roadmap
+     * @param root root vertex
+     * @param goal goal vertex
+     * @return the vertices from root to goal, null if the goal can not be reached
+     */
+    private int[] searchVertices(Roadmap map, int root, int goal) {
+        // Fringe, every vertex enters it at most once
+        int[] fringe = new int[map.size()];
+        int head = 0;
+        int tail = 0;
+        // backchain information
+        int[] parents = new int[map.size()];
+        BitSet reached = new BitSet(map.size());
+        // Start node has no parent, add to fringe
+        parents[root] = -1;
+        reached.set(root);
+        fringe[tail++] = root;
+        while (head < tail) {
+            // Get node from fringe
+            int currentNode = fringe[head++];
+            // Goal test
+            if (currentNode == goal) {
+                return backchainz(currentNode, parents);
+            }
+            //Check each neighbor
+            for (int i = 0; i < map.degree(currentNode); i++) {
+                int node = map.neighbor(currentNode, i);
+                // If not visited
+                if (!reached.get(node)) {
+                    reached.set(node);
+                    parents[node] = currentNode;
+                    fringe[tail++] = node;
+                }
+            }
+        }
+        //No solution
+        return null;
+    }
+    
+    
+    /**
+     * A* over the roadmap vertices, an edge costing stepsNeeded. The heuristic is the SE(2) distance
+     * to the goal divided by the step length. It never overestimates and is consistent, because the
+     * distance obeys the triangle inequality and stepsNeeded rounds it up.
+     * @param map given graph/roadmap
+     * @param root root vertex
+     * @param goal goal vertex
+     * @return the vertices from root to goal, null if the goal can not be reached
      */
-    private boolean isPathCollisionFree(RobotConfig r1, RobotConfig r2) {
-        List<RobotConfig> samples = new ArrayList<>(sampleOnEdge(r1, r2, 10));
-        for(RobotConfig r : samples) {
-            if(!this.states.robotCollisionFree(r)) {
-                return false;
+    private int[] searchShortest(Roadmap map, int root, int goal) {
+        IndexedHeap<Integer> fringe = new IndexedHeap<>(map.size());
+        BitSet closed = new BitSet(map.size());
+        int[] cost = new int[map.size()];
+        int[] parents = new int[map.size()];
+        Arrays.fill(cost, Integer.MAX_VALUE);
+        cost[root] = 0;
+        parents[root] = -1;
+        fringe.push(root, stepDistance(map, root, goal), root);
+        while (!fringe.isEmpty()) {
+            int currentNode = fringe.pop();
+            closed.set(currentNode);
+            if (currentNode == goal) {
+                return backchainz(currentNode, parents);
+            }
+            int g = cost[currentNode];
+            for (int i = 0; i < map.degree(currentNode); i++) {
+                int node = map.neighbor(currentNode, i);
+                if (closed.get(node)) {
+                    continue;
+                }
+                int newCost = g + stepsNeeded(map.getX(currentNode), map.getY(currentNode), map.getAngle(currentNode),
+                        map.getX(node), map.getY(node), map.getAngle(node));
+                if (newCost < cost[node]) {
+                    cost[node] = newCost;
+                    parents[node] = currentNode;
+                    double f = newCost + stepDistance(map, node, goal);
+                    if (fringe.contains(node)) {
+                        fringe.decreaseKey(node, f, node);
+                    } else {
+                        fringe.push(node, f, node);
+                    }
+                }
             }
         }
-        return true;
+        //No solution
+        return null;
     }
 
     /**
-     * Sample n RobotConfigs between RobotConfig r1 and RobotConfig r2
-     * @param r1 RobotConfig 1
-     * @param r2 RobotConfig 2
-     * @param n number of samples
-     * @return A list of n RobotConfigs
+     * Get the SE(2) distance between two vertices in steps, without rounding up
      */
-    private static LinkedList<RobotConfig> sampleOnEdge(RobotConfig r1, RobotConfig r2, int n) {
-        LinkedList<RobotConfig> samples = new LinkedList<>();
-
-        Double x, y, angle;
-
-        for(int i = 0; i < n; i++) {
-            if(r1.getPos().getX() < r2.getPos().getX()) {
-                x = r1.getPos().getX() + (i * ((Math.abs(r1.getPos().getX() - r2.getPos().getX())) / n));
-            } else {
-                x = r1.getPos().getX() - (i * ((Math.abs(r1.getPos().getX() - r2.getPos().getX())) / n));
-            }
+    private static double stepDistance(Roadmap map, int v, int w) {
+        return Math.sqrt(KdTree.distanceSq(map.getX(v), map.getY(v), map.getAngle(v),
+                map.getX(w), map.getY(w), map.getAngle(w))) / MAX_STEP;
+    }
 
-            if(r1.getPos().getY() < r2.getPos().getY()) {
-                y = r1.getPos().getY() + (i * ((Math.abs(r1.getPos().getY() - r2.getPos().getY())) / n));
-            } else {
-                y = r1.getPos().getY() - (i * ((Math.abs(r1.getPos().getY() - r2.getPos().getY())) / n));
+    /**
+     * Collision check the edges of a path that have not been checked yet, removing the ones in collision
+     * @param map given graph/roadmap
+     * @param path the vertices of the path
+     * @return true if an edge was removed
+     */
+    private boolean removeInvalidEdges(Roadmap map, int[] path) {
+        boolean removed = false;
+        for (int j = 0; j + 1 < path.length; j++) {
+            int from = path[j];
+            int to = path[j + 1];
+            int i = map.indexOfEdge(from, to);
+            //an edge removed earlier in this pass, e.g. when the path passes the vertex twice
+            if (i < 0) {
+                continue;
             }
-            if(r1.getOrientation() < r2.getOrientation()) {
-                angle = r1.getOrientation() + (i * ((Math.abs(r1.getOrientation() - r2.getOrientation())) / n));
-            } else {
-                angle = r1.getOrientation() - (i * ((Math.abs(r1.getOrientation() - r2.getOrientation())) / n));
+            if (!map.isChecked(from, i)) {
+                if (isEdgeFree(checker, map, from, to)) {
+                    map.setChecked(from, i);
+                } else {
+                    invalidEdges.add(edgeKey(from, to));
+                    map.removeEdge(from, to);
+                    refillNeighbors(map, from);
+                    removed = true;
+                }
             }
+        }
+        return removed;
+    }
 
-//            Double x = r1.getPos().getX() + (i * ((Math.abs(r1.getPos().getX() - r2.getPos().getX())) / n));
-//            Double y = r1.getPos().getY() + (i * ((Math.abs(r1.getPos().getY() - r2.getPos().getY())) / n));
-//            Double angle = r1.getOrientation() + (i * ((Math.abs(r1.getOrientation() - r2.getOrientation())) / n));
-            RobotConfig s  = new RobotConfig(new Point2D.Double(doubleFormatter(x), doubleFormatter(y)), doubleFormatter(angle));
-            samples.add(s);
+    private int[] backchainz(int node, int[] parent) {
+        int length = 1;
+        for (int v = node; parent[v] >= 0; v = parent[v]) {
+            length++;
         }
-        return samples;
+        int[] solution = new int[length];
+        for (int v = node; v >= 0; v = parent[v]) {
+            solution[--length] = v;
+        }
+        return solution;
     }
 
 
+    /**
+     * Sample an random robot config
+     * @param rng the sampler to draw from
+     * @param config filled with the x, y and angle of an random robot config
+     *
+     */
+    private void randomRobotConfig(Sampler rng, double[] config) {
+        rng.next(config);
+        Point2D p = randomPoint(config[0], config[1]);
+        Double angle = randomAngle(config[2]);
+        config[0] = p.getX();
+        config[1] = p.getY();
+        config[2] = angle;
+    }
+
 
     /**
-     * Get the path from RobotConfig rc1 to RobotConfig rc2 at maximum of unit 0.001 per step
-     * @param rc1 RobotConfig 1
-     * @param rc2 RobotConfig 2
-     * @return a list of robotConfig that represents path
+     * Sample an random robot config with its position inside a rectangle
+     * @param rng the sampler to draw from
+     * @param rect the region of the position
+     * @param config filled with the x, y and angle of an random robot config
      */
-    private static LinkedList<RobotConfig> robotPathBreakDown(RobotConfig rc1, RobotConfig rc2) {
-        LinkedList<RobotConfig> path = new LinkedList<>();
-        Double distance = Math.sqrt(Math.pow(rc1.getPos().getX() - rc2.getPos().getX(), 2)
-                + Math.pow(rc1.getPos().getY() - rc2.getPos().getY(), 2)
-                + Math.pow(rc1.getOrientation() - rc2.getOrientation(), 2));
+    private void randomRobotConfig(Sampler rng, Rectangle2D rect, double[] config) {
+        rng.next(config);
+        config[0] = FixedPoint.format3(rect.getX() + config[0] * rect.getWidth());
+        config[1] = FixedPoint.format3(rect.getY() + config[1] * rect.getHeight());
+        config[2] = randomAngle(config[2]);
+    }
 
-        int steps = stepsNeeded(rc1, rc2);
-        path = sampleOnEdge(rc1, rc2, steps);
-        return path;
+    /**
+     * Generate an random point with coords from 0 to 1
+     * @param u sample for x in [0, 1)
+     * @param v sample for y in [0, 1)
+     * @return an random point with coords from 0 to 1 inclusively, 0.001 unit
+     */
+    private Point2D randomPoint(double u, double v) {
+        int xInt = (int) (u * 1000);
+        int yInt = (int) (v * 1000);
+        Double x = (Double)(xInt/1000.0);
+        Double y = (Double)(yInt/1000.0);
+        return new Point2D.Double(x, y);
     }
 
-    //get the detailed step by step robot path from a rough path
-    private static LinkedList<RobotConfig> fullRobotPathBreakDown(LinkedList<RobotConfig> path) {
-        LinkedList<RobotConfig> fullPath = new LinkedList<>();
-        for(int i = 0; i < path.size() - 1; i++) {
-            fullPath.addAll(robotPathBreakDown(path.get(i), path.get(i + 1)));
-        }
-        return fullPath;
+    /**
+     * Generate an random angle range from 0 - pi. The robot is a line through its centre, so turning it by pi
+     * gives the same robot, and [0, pi) covers every orientation.
+     * @param u sample for the angle in [0, 1)
+     * @return an random angle from 0 to 3.140, 0.001 unit
+     */
+    private  Double randomAngle(double u) {
+        int radInt = (int) (u * (int)(1000 * Math.PI));
+        Double rad = (Double)(radInt/1000.0);
+        rad = (double)Math.round(rad * 1000d) / 1000d;
+        return rad;
     }
 
+
     /**
      * Return the number of steps needed to move rc1 to rc2
      * each step cannot exceed 0.001
@@ -394,17 +991,34 @@ public class PRM {
      * @return the number of steps needed to move rc1 to rc2
      */
     public static int stepsNeeded(RobotConfig rc1, RobotConfig rc2) {
-        Double distance = Math.sqrt(Math.pow(rc1.getPos().getX() - rc2.getPos().getX(), 2)
-                + Math.pow(rc1.getPos().getY() - rc2.getPos().getY(), 2)
-                + Math.pow(rc1.getOrientation() - rc2.getOrientation(), 2));
+        return stepsNeeded(rc1.getPos().getX(), rc1.getPos().getY(), rc1.getOrientation(),
+                rc2.getPos().getX(), rc2.getPos().getY(), rc2.getOrientation());
+    }
 
-        int steps = (int) Math.ceil(distance/0.0009);
+    private static int stepsNeeded(double x1, double y1, double angle1, double x2, double y2, double angle2) {
+        Double distance = Math.sqrt(Math.pow(x1 - x2, 2)
+                + Math.pow(y1 - y2, 2)
+                + Math.pow(angle1 - nearAngle(angle1, angle2), 2));
+
+        int steps = (int) Math.ceil(distance/MAX_STEP);
         return steps;
     }
 
-
-    private static double doubleFormatter(Double num) {
-        DecimalFormat formatter = new DecimalFormat("#0.000");
-        return Double.parseDouble(formatter.format(num));
+    /**
+     * Get the angle equal to angle2 (mod 2pi) that is closest to angle1,
+     * angle2 itself unless they are more than pi apart
+     * @param angle1 the angle to turn from
+     * @param angle2 the angle to turn to
+     * @return angle2 shifted by a multiple of 2pi to within pi of angle1
+     */
+    static double nearAngle(double angle1, double angle2) {
+        double twoPi = 2 * Math.PI;
+        while (angle2 - angle1 > Math.PI) {
+            angle2 -= twoPi;
+        }
+        while (angle1 - angle2 > Math.PI) {
+            angle2 += twoPi;
+        }
+        return angle2;
     }
 }
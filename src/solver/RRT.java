@@ -8,28 +8,58 @@ import tester.Tester;
 
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * RRT algorithm for sampling configurations for boxes,
  * plans the path of a box.
+ * The trees are RRTTrees of primitive arrays, and the positions they try are checked against
+ * the obstacles held as primitive rectangles, so growing a tree creates no objects per node.
  */
 public class RRT {
     // Class Variables //
     private final int MAX_NODES = 1000000;
-    private final double STEP_SIZE = Tester.MAX_BASE_STEP;
-    private final DecimalFormat DECIMAL = new DecimalFormat("0.###");
-    private List<MovingBox> moveableBox;
-    private List<MovingObstacle> moveableObstacle;
-    private List<StaticObstacle> staticObstacle;
-    private Node start;
-    private Node end;
+    // Samples drawn by a tree pair before it gives up. Trees that cannot reach each other fill the free
+    // positions around their roots and never hold MAX_NODES nodes, so they stop here instead.
+    private final int MAX_SAMPLES = 10000000;
+    // Step size in FixedPoint micro-units
+    private final int STEP_SIZE = FixedPoint.toMicro(Tester.MAX_BASE_STEP);
+    // Obstacles as {x, y, width, height} each: moving boxes, then moving obstacles, then static obstacles
+    private double[] obstacles;
+    // Root positions of the trees in micro-units
+    private int startX;
+    private int startY;
+    private int endX;
+    private int endY;
     private double width;
     private LinkedList<Point2D> coordPath;
-    private List<Node> startList = new ArrayList<>();
-    private List<Node> endList = new ArrayList<>();
-    private List<Node> allNodes = new ArrayList<>();
+    // Source of the random positions (x, y), split into an independent stream for every tree pair
+    private Sampler sampler;
+    // Number of tree pairs grown at once
+    private int pairs;
+    // Set by the first tree pair to connect, the other pairs stop when they see it
+    private AtomicBoolean connected = new AtomicBoolean(false);
+    // Samples spent shortening the path after the first connection, 0 returns the first path found
+    private int refinement;
+    // Chance of stepping toward the other tree instead of a random position
+    private double goalBias;
+    // Chance of stepping toward a coarse cell the tree has not reached yet
+    private double frontierBias;
+    // Lattice points a box fits at, the random positions are taken from them, null to take any point
+    private int[] freePoints;
+    // Coarse cells holding at least one lattice point a box fits at, for the frontier bias
+    private int[] freeCoarseCells;
+    // Lattice points along each axis the random positions are taken from, and along each side of a coarse cell
+    private static final int SIDE = 1000;
+    private static final int COARSE_STEPS = 10;
+    private static final int COARSE_SIDE = SIDE / COARSE_STEPS;
+    // Samples drawn by the tree pair that found coordPath
+    private int samples = 0;
+    // Offset from a node to a lattice neighbour, indexed by the RRTTree direction of a step from the node to it
+    private final int[][] NEIGHBOURS = {{STEP_SIZE, 0}, {-STEP_SIZE, 0}, {0, STEP_SIZE}, {0, -STEP_SIZE}};
 
 
     // Constructors //
@@ -43,12 +73,117 @@ public class RRT {
      */
     public RRT(Box currBox, Point2D goal, List<MovingBox> moveableBox, List<MovingObstacle> moveableObstacle
             , List<StaticObstacle> staticObstacle) {
-        start = new Node(currBox.getPos());
-        end = new Node(goal);
+        this(currBox, goal, moveableBox, moveableObstacle, staticObstacle, new RandomSampler(2));
+    }
+
+    /**
+     * The constructor of RRT with the source of its random positions.
+     * @param currBox the box to be path planned (bottom left aligned coord)
+     * @param goal the goal where the box has to be moved to (bottom left aligned coord)
+     * @param moveableObstacle list of moveableObstacles, include moving boxes and moving obstacles
+     * @param staticObstacle list of staticObstacle
+     * @param sampler a sampler of at least 2 dimensions, e.g. a seeded RandomSampler for reproducible runs
+     */
+    public RRT(Box currBox, Point2D goal, List<MovingBox> moveableBox, List<MovingObstacle> moveableObstacle
+            , List<StaticObstacle> staticObstacle, Sampler sampler) {
+        this(currBox, goal, moveableBox, moveableObstacle, staticObstacle, sampler, 1);
+    }
+
+    /**
+     * The constructor of RRT growing several independent pairs of trees at once on the common fork-join pool,
+     * each with a sampler split off the given one. The path of the first pair to connect is kept.
+     * @param currBox the box to be path planned (bottom left aligned coord)
+     * @param goal the goal where the box has to be moved to (bottom left aligned coord)
+     * @param moveableObstacle list of moveableObstacles, include moving boxes and moving obstacles
+     * @param staticObstacle list of staticObstacle
+     * @param sampler a sampler of at least 2 dimensions
+     * @param pairs the number of tree pairs, 1 grows one pair on the calling thread with the sampler itself
+     */
+    public RRT(Box currBox, Point2D goal, List<MovingBox> moveableBox, List<MovingObstacle> moveableObstacle
+            , List<StaticObstacle> staticObstacle, Sampler sampler, int pairs) {
+        this(currBox, goal, moveableBox, moveableObstacle, staticObstacle, sampler, pairs, 0);
+    }
+
+    /**
+     * The constructor of RRT with an RRT* refinement of the path. Every new node takes the cheapest of its lattice
+     * neighbours in its tree as parent, and the neighbours it is a cheaper parent for are rewired to it. Once the
+     * trees connect they keep growing for the given number of samples, and the shortest join of the trees is kept.
+     * @param currBox the box to be path planned (bottom left aligned coord)
+     * @param goal the goal where the box has to be moved to (bottom left aligned coord)
+     * @param moveableObstacle list of moveableObstacles, include moving boxes and moving obstacles
+     * @param staticObstacle list of staticObstacle
+     * @param sampler a sampler of at least 2 dimensions
+     * @param pairs the number of tree pairs, 1 grows one pair on the calling thread with the sampler itself
+     * @param refinement the number of samples after the first connection, 0 for plain RRT-Connect
+     */
+    public RRT(Box currBox, Point2D goal, List<MovingBox> moveableBox, List<MovingObstacle> moveableObstacle
+            , List<StaticObstacle> staticObstacle, Sampler sampler, int pairs, int refinement) {
+        this(currBox, goal, moveableBox, moveableObstacle, staticObstacle, sampler, pairs, refinement, 0, false, 0);
+    }
+
+    /**
+     * The constructor of RRT with biased sampling. A goal biased step goes toward the node last added to the other
+     * tree, which is at first its root, so the trees grow toward each other through open space. The random positions
+     * can be restricted to the lattice points the box fits at. Uniform positions already give RRT its Voronoi bias,
+     * as a node is extended as often as a random position falls in its Voronoi region, and restricting them to the
+     * free points makes that bias count the free space only. A frontier biased step goes toward a random point of a
+     * coarse cell of 0.01 the tree has no node in yet, the nearest node to it being on the frontier of the tree.
+     * This is coverage sampling, it does not weigh the nodes by the size of their Voronoi regions.
+     * The choice between the kinds of step is made with the third coordinate of every sample.
+     * @param currBox the box to be path planned (bottom left aligned coord)
+     * @param goal the goal where the box has to be moved to (bottom left aligned coord)
+     * @param moveableObstacle list of moveableObstacles, include moving boxes and moving obstacles
+     * @param staticObstacle list of staticObstacle
+     * @param sampler a sampler of at least 2 dimensions, 3 if goalBias or frontierBias is not 0
+     * @param pairs the number of tree pairs, 1 grows one pair on the calling thread with the sampler itself
+     * @param refinement the number of samples after the first connection, 0 for plain RRT-Connect
+     * @param goalBias the chance of a goal biased step
+     * @param freeCells true to take the random positions only from the lattice points the box fits at
+     * @param frontierBias the chance of a frontier biased step
+     */
+    public RRT(Box currBox, Point2D goal, List<MovingBox> moveableBox, List<MovingObstacle> moveableObstacle
+            , List<StaticObstacle> staticObstacle, Sampler sampler, int pairs, int refinement
+            , double goalBias, boolean freeCells, double frontierBias) {
+        if (goalBias < 0 || frontierBias < 0 || goalBias + frontierBias > 1) {
+            throw new IllegalArgumentException("RRT biases must be chances adding up to at most 1");
+        }
+        if ((goalBias > 0 || frontierBias > 0) && sampler.getDimension() < 3) {
+            throw new IllegalArgumentException("RRT needs a sampler of 3 dimensions for biased steps");
+        }
+        if (sampler.getDimension() < 2) {
+            throw new IllegalArgumentException("RRT needs a sampler of 2 dimensions");
+        }
+        if (pairs < 1) {
+            throw new IllegalArgumentException("RRT needs at least 1 tree pair");
+        }
+        if (refinement < 0) {
+            throw new IllegalArgumentException("RRT refinement must not be negative");
+        }
+        this.refinement = refinement;
+        this.goalBias = goalBias;
+        this.frontierBias = frontierBias;
+        this.sampler = sampler;
+        this.pairs = pairs;
+        startX = FixedPoint.round3(currBox.getPos().getX());
+        startY = FixedPoint.round3(currBox.getPos().getY());
+        endX = FixedPoint.round3(goal.getX());
+        endY = FixedPoint.round3(goal.getY());
         width = currBox.getWidth();
-        this.moveableBox = moveableBox;
-        this.moveableObstacle = moveableObstacle;
-        this.staticObstacle = staticObstacle;
+        obstacles = new double[4 * (moveableBox.size() + moveableObstacle.size() + staticObstacle.size())];
+        int i = 0;
+        for (MovingBox obst : moveableBox) {
+            i = addObstacle(i, obst.getRect());
+        }
+        for (MovingObstacle obst : moveableObstacle) {
+            i = addObstacle(i, obst.getRect());
+        }
+        for (StaticObstacle obst : staticObstacle) {
+            i = addObstacle(i, obst.getRect());
+        }
+        if ((freeCells || frontierBias > 0) && !findFreePoints(freeCells)) {
+            // the trees could never meet
+            return;
+        }
 
         this.setCoordPath();
     }
@@ -56,332 +191,605 @@ public class RRT {
     // Methods //
 
     /**
-     * initializes coordPath filling it with the solution path
+     * add an obstacle to the obstacles array
+     * @param i the position of the obstacle in the array
+     * @param rect the rectangle of the obstacle
+     * @return the position of the next obstacle
      */
-    private void setCoordPath() {
-        addToList(startList, start);
-        addToList(endList, end);
-        coordPath = pathSearch();
+    private int addObstacle(int i, Rectangle2D rect) {
+        obstacles[i] = rect.getX();
+        obstacles[i + 1] = rect.getY();
+        obstacles[i + 2] = rect.getWidth();
+        obstacles[i + 3] = rect.getHeight();
+        return i + 4;
     }
 
     /**
-     * the main algorithm of RRT, switches between finding a path from start and goal.
-     * @return a LinkedList filled with Point2D objects that forms a path from start to goal.
+     * find the lattice points the box fits at, and the coarse cells holding any of them.
+     * A box intersects an obstacle when it overlaps it along both axes, so the lattice points
+     * blocked by an obstacle are the product of the columns and rows it overlaps the box at.
+     * @param keepPoints true to keep the lattice points as freePoints
+     * @return false if the goal cannot be reached from the start over the lattice points the box fits at
      */
-    private LinkedList<Point2D> pathSearch() {
-        // flip determines whether to expand the path from start node or goal node. False = start, True = goal
-        boolean flip = false;
-        loop:
-        while (allNodes.size() < MAX_NODES) {
-            // Make random Node
-            Random random = new Random();
-            Point2D randPoint = new Point2D.Double(
-                    Double.parseDouble(DECIMAL.format(random.nextInt(1000) * 0.001))
-                    , Double.parseDouble(DECIMAL.format(random.nextInt(1000) * 0.001)));
-            Node randNode = new Node(randPoint);
-
-            // Find the nearest Node
-            Node nearNode;
-            if (flip) {
-                nearNode = randNode.nearestNode(endList);
-            } else {
-                nearNode = randNode.nearestNode(startList);
+    private boolean findFreePoints(boolean keepPoints) {
+        BitSet blocked = new BitSet(SIDE * SIDE);
+        for (int i = 0; i < obstacles.length; i += 4) {
+            if (width <= 0 || obstacles[i + 2] <= 0 || obstacles[i + 3] <= 0) {
+                continue;
             }
-
-
-            // Make new Node a STEP_SIZE closer towards randNode from nearNode
-            // step on the axis that is furtherest away from nearNode
-            Node newNode;
-            double xDist = randNode.getX() - nearNode.getX();
-            double yDist = randNode.getY() - nearNode.getY();
-            Point2D point;
-            String direction;
-            if (Math.abs(xDist) >= Math.abs(yDist)) {
-                if (xDist > 0) {
-                    point = new Point2D.Double(
-                            Double.parseDouble(DECIMAL.format(nearNode.getX() + STEP_SIZE))
-                            , Double.parseDouble(DECIMAL.format(nearNode.getY())));
-                    direction = "r";
-                } else {
-                    point = new Point2D.Double(
-                            Double.parseDouble(DECIMAL.format(nearNode.getX() - STEP_SIZE))
-                            , Double.parseDouble(DECIMAL.format(nearNode.getY())));
-                    direction = "l";
-                }
-            } else {
-                if (yDist > 0) {
-                    point = new Point2D.Double(
-                            Double.parseDouble(DECIMAL.format(nearNode.getX()))
-                            , Double.parseDouble(DECIMAL.format(nearNode.getY() + STEP_SIZE)));
-                    direction = "d";
-                } else {
-                    point = new Point2D.Double(
-                            Double.parseDouble(DECIMAL.format(nearNode.getX()))
-                            , Double.parseDouble(DECIMAL.format(nearNode.getY() - STEP_SIZE)));
-                    direction = "u";
+            BitSet rows = new BitSet(SIDE);
+            for (int row = 0; row < SIDE; row++) {
+                double y = FixedPoint.toDouble(row * STEP_SIZE);
+                if (obstacles[i + 1] + obstacles[i + 3] > y && obstacles[i + 1] < y + width) {
+                    rows.set(row);
                 }
             }
-            newNode = new Node(point);
-            newNode.setParent(nearNode);
-            newNode.setDirection(direction);
-
-            // Check if newNode pos is not blocked by Moveable Boxes and robot has enough room to move
-            Box testBox = new MovingBox(newNode.getCurrPos(), width);
-            for (MovingBox obst : moveableBox) {
-                if (testBox.getRect().intersects(obst.getRect().getX(), obst.getRect().getY()
-                        , obst.getWidth(), obst.getWidth())) {
-                    // currBox intersects, so discard newNode, start a next random search
-                    continue loop;
-                } else if (notEnoughRoom(testBox.getRect(), obst.getRect(), nearNode, newNode)) {
-                    continue loop;
+            for (int col = 0; col < SIDE; col++) {
+                double x = FixedPoint.toDouble(col * STEP_SIZE);
+                if (obstacles[i] + obstacles[i + 2] > x && obstacles[i] < x + width) {
+                    for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                        blocked.set(row * SIDE + col);
+                    }
                 }
             }
-            // Check if newNode pos is not blocked by Moveable Obstacle and robot has enough room to move
-            for (MovingObstacle obst : moveableObstacle) {
-                if (testBox.getRect().intersects(obst.getRect().getX(), obst.getRect().getY()
-                        , obst.getWidth(), obst.getWidth())) {
-                    // currBox intersects, so discard newNode, start a next random search
-                    continue loop;
-                } else if (notEnoughRoom(testBox.getRect(), obst.getRect(), nearNode, newNode)) {
-                    continue loop;
-                }
+        }
+
+        int count = SIDE * SIDE - blocked.cardinality();
+        int[] points = new int[count];
+        boolean[] cells = new boolean[COARSE_SIDE * COARSE_SIDE];
+        int cellCount = 0;
+        int n = 0;
+        for (int point = blocked.nextClearBit(0); point < SIDE * SIDE; point = blocked.nextClearBit(point + 1)) {
+            points[n++] = point;
+            int cell = coarseCell(point % SIDE, point / SIDE);
+            if (!cells[cell]) {
+                cells[cell] = true;
+                cellCount++;
             }
-            // Check if newNode pos is not blocked by Static Obstacles
-            for (StaticObstacle obst : staticObstacle) {
-                if (testBox.getRect().intersects(obst.getRect().getX(), obst.getRect().getY()
-                        , obst.getRect().getWidth(), obst.getRect().getWidth())) {
-                    // currBox intersects, so skip discard newNode, start a next random search
-                    continue loop;
-                } else if (notEnoughRoom(testBox.getRect(), obst.getRect(), nearNode, newNode)) {
-                    continue loop;
-                }
+        }
+        freeCoarseCells = new int[cellCount];
+        n = 0;
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cells[cell]) {
+                freeCoarseCells[n++] = cell;
+            }
+        }
+        // a box fitting nowhere leaves the positions unrestricted
+        if (keepPoints && count > 0) {
+            freePoints = points;
+        }
+        return isReachable(blocked);
+    }
+
+    /**
+     * check if the goal can be reached from the start one step at a time over lattice points the box fits at.
+     * Every node of a tree is such a point one step from its parent, so trees that cannot meet this way never
+     * connect, and would only stop once MAX_SAMPLES are drawn.
+     * @param blocked the lattice points the box does not fit at
+     * @return true if the goal is reachable, or if the start or the goal is off the lattice
+     */
+    private boolean isReachable(BitSet blocked) {
+        int start = latticePoint(startX, startY);
+        int end = latticePoint(endX, endY);
+        if (start < 0 || end < 0) {
+            return true;
+        }
+        // the roots are in their trees whether the box fits there or not
+        BitSet reached = new BitSet(SIDE * SIDE);
+        int[] queue = new int[SIDE * SIDE];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        reached.set(start);
+        while (head < tail) {
+            int point = queue[head++];
+            if (point == end) {
+                return true;
             }
-            // Check if newNode already exists in allNodes
-            for (Node n : allNodes) {
-                if (n.equals(newNode)) {
-                    continue loop;
+            int col = point % SIDE;
+            int row = point / SIDE;
+            for (int[] offset : NEIGHBOURS) {
+                int c = col + Integer.signum(offset[0]);
+                int r = row + Integer.signum(offset[1]);
+                int next = r * SIDE + c;
+                if (c >= 0 && r >= 0 && c < SIDE && r < SIDE && !reached.get(next)
+                        && (!blocked.get(next) || next == end)) {
+                    reached.set(next);
+                    queue[tail++] = next;
                 }
             }
+        }
+        return false;
+    }
 
-            // All constraints has been checked and passed, add newNode to list of all nodes
-            if (flip) {
-                addToList(endList, newNode);
-            } else {
-                addToList(startList, newNode);
-            }
+    /**
+     * @param x x in micro-units
+     * @param y y in micro-units
+     * @return the lattice point at the position, -1 if it is not one
+     */
+    private int latticePoint(int x, int y) {
+        if (x < 0 || y < 0 || x % STEP_SIZE != 0 || y % STEP_SIZE != 0 || x / STEP_SIZE >= SIDE || y / STEP_SIZE >= SIDE) {
+            return -1;
+        }
+        return (y / STEP_SIZE) * SIDE + x / STEP_SIZE;
+    }
 
-            // check if newNode is a STEP next to nodes in list2, if it is, return a path
-            Node adjNode;
-            if (flip){
-                adjNode = newNode.nextToList(startList);
-            } else {
-                adjNode = newNode.nextToList(endList);
-            }
-            if (adjNode != null) {
-                // Backtrack from newNode, trace the path back to root
-                Node nodeCheck = newNode;
-                LinkedList<Point2D> path1 = new LinkedList<>();
-                do {
-                    path1.addFirst(nodeCheck.getCurrPos());
-                    nodeCheck = nodeCheck.getParent();
-                } while (nodeCheck != null);
-
-                // Backtrack from adjNode, trace the path back to root
-                nodeCheck = adjNode;
-                LinkedList<Point2D> path2 = new LinkedList<>();
-                do {
-                    path2.addLast(nodeCheck.getCurrPos());
-                    nodeCheck = nodeCheck.getParent();
-                } while (nodeCheck != null);
-                path1.addAll(path2);
-
-                // Check if the list is back to front
-                if (path1.getFirst().equals(end.getCurrPos())) {
-                    Collections.reverse(path1);
-                }
-                return path1;
+    /**
+     * @param col column of a lattice point
+     * @param row row of a lattice point
+     * @return the coarse cell holding the lattice point
+     */
+    private static int coarseCell(int col, int row) {
+        return (row / COARSE_STEPS) * COARSE_SIDE + col / COARSE_STEPS;
+    }
 
-            } else {
-                // start another search, switch list around
-                flip = !flip;
+    /**
+     * initializes coordPath filling it with the solution path
+     */
+    private void setCoordPath() {
+        if (pairs == 1) {
+            TreePair pair = new TreePair(sampler);
+            coordPath = pair.pathSearch();
+            samples = pair.samples;
+        } else {
+            coordPath = searchConcurrently();
+        }
+    }
+
+    /**
+     * Grow the tree pairs in parallel. Every pair stops once one of them connects, and only the pair
+     * that connected first returns a path.
+     * @return the path of the first pair to connect, null if none did
+     */
+    private LinkedList<Point2D> searchConcurrently() {
+        List<TreePair> treePairs = new ArrayList<>();
+        List<ForkJoinTask<LinkedList<Point2D>>> tasks = new ArrayList<>();
+        for (int i = 0; i < pairs; i++) {
+            TreePair pair = new TreePair(sampler.split());
+            treePairs.add(pair);
+            tasks.add(ForkJoinPool.commonPool().submit(pair::pathSearch));
+        }
+        LinkedList<Point2D> path = null;
+        for (int i = 0; i < tasks.size(); i++) {
+            LinkedList<Point2D> found = tasks.get(i).join();
+            if (found != null) {
+                path = found;
+                samples = treePairs.get(i).samples;
             }
         }
-        // if this code is reached, it means allNode size is more than
-        // the MAX_NODE number
-        return null;
+        return path;
     }
 
     /**
-     * add a specific Node to the specified list (either startList or endList) and also add it to allNodes list
-     * @param list the list to add Node to
-     * @param node the Node to add to the list
+     * check if the box can be pushed to the given position, it must not intersect any obstacle
+     * and the robot must have enough room to change direction there.
+     * @param x x of the box in micro-units
+     * @param y y of the box in micro-units
+     * @param parentDirection the direction of the push to the previous position, NONE if there was none
+     * @param direction the direction of the push to the new position
+     * @return True if the box can be pushed there
      */
-    private void addToList(List<Node> list, Node node) {
-        list.add(node);
-        allNodes.add(node);
+    private boolean canMove(int x, int y, byte parentDirection, byte direction) {
+        double boxX = FixedPoint.toDouble(x);
+        double boxY = FixedPoint.toDouble(y);
+        for (int i = 0; i < obstacles.length; i += 4) {
+            if (intersects(boxX, boxY, width, i) || notEnoughRoom(boxX, boxY, i, parentDirection, direction)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
      * check if the given box has enough room for the robot to rotate in relation to the given obstacle.
-     * @param box the box that robot has to rotate around
-     * @param obst the obstacle to be checked if robot is not blocked by it
-     * @param parent the parent node to check if robot requires change of direction
-     * @param child the child node to check if robot requires change of direction
+     * @param boxX x of the box that robot has to rotate around
+     * @param boxY y of the box that robot has to rotate around
+     * @param obst the position of the obstacle in the obstacles array
+     * @param parentDirection the direction of the push to the parent node, NONE at the root
+     * @param childDirection the direction of the push to the child node
      * @return True if not enough room, False if enough room
      */
-    private boolean notEnoughRoom(Rectangle2D box, Rectangle2D obst, Node parent, Node child) {
-        if (parent.getDirection() == null) {
+    private boolean notEnoughRoom(double boxX, double boxY, int obst, byte parentDirection, byte childDirection) {
+        double half = width / 2;
+        if (parentDirection == RRTTree.NONE) {
             return false;
             // Case 1: Robot switch from left side of box to bot side or vice versa,
-        } else if ((parent.getDirection().equals("r") && child.getDirection().equals("u"))
-                || (parent.getDirection().equals("u") && child.getDirection().equals("r"))) {
-            Point2D leftBoxPoint = new Point2D.Double((box.getX() - (box.getWidth() / 2)), box.getCenterY());
-            Point2D downBoxPoint = new Point2D.Double(box.getX(), (box.getY() + box.getWidth()));
-            Box leftBox = new MovingBox(leftBoxPoint, (box.getWidth() / 2));
-            Box downBox = new MovingBox(downBoxPoint, (box.getWidth() / 2));
-
-            return (leftBox.getRect().intersects(obst.getX(), obst.getY(), obst.getWidth(), obst.getWidth())
-                    || downBox.getRect().intersects(obst.getX(), obst.getY(), obst.getWidth(), obst.getWidth()));
-
+        } else if (turns(parentDirection, childDirection, RRTTree.RIGHT, RRTTree.UP)) {
+            return intersects(boxX - half, boxY + width / 2.0, half, obst)
+                    || intersects(boxX, boxY + width, half, obst);
             // Case 2: Robot switch from left side of box to top side or vice versa.
-        } else if ((parent.getDirection().equals("r") && child.getDirection().equals("d"))
-                || (parent.getDirection().equals("d") && child.getDirection().equals("r"))) {
-            Point2D leftBoxPoint = new Point2D.Double((box.getX() - (box.getWidth() / 2)), box.getY());
-            Point2D upBoxPoint = new Point2D.Double(box.getX(), (box.getY() - (box.getWidth() / 2)));
-            Box leftBox = new MovingBox(leftBoxPoint, (box.getWidth() / 2));
-            Box upBox = new MovingBox(upBoxPoint, (box.getWidth() / 2));
-
-            return (leftBox.getRect().intersects(obst.getX(), obst.getY(), obst.getWidth(), obst.getWidth())
-                    || upBox.getRect().intersects(obst.getX(), obst.getY(), obst.getWidth(), obst.getWidth()));
+        } else if (turns(parentDirection, childDirection, RRTTree.RIGHT, RRTTree.DOWN)) {
+            return intersects(boxX - half, boxY, half, obst)
+                    || intersects(boxX, boxY - half, half, obst);
             // Case 3: Robot switch from right side of box to bot side or vice versa.
-        } else if ((parent.getDirection().equals("l") && child.getDirection().equals("u"))
-                || (parent.getDirection().equals("u") && child.getDirection().equals("l"))) {
-            Point2D rightBoxPoint = new Point2D.Double((box.getX() + box.getWidth()), box.getCenterY());
-            Point2D downBoxPoint = new Point2D.Double(box.getCenterX(), (box.getY() + box.getWidth()));
-            Box rightBox = new MovingBox(rightBoxPoint, (box.getWidth() / 2));
-            Box downBox = new MovingBox(downBoxPoint, (box.getWidth() / 2));
-
-            return rightBox.getRect().intersects(obst.getX(), obst.getY(), obst.getWidth(), obst.getWidth())
-                    || downBox.getRect().intersects(obst.getX(), obst.getY(), obst.getWidth(), obst.getWidth());
+        } else if (turns(parentDirection, childDirection, RRTTree.LEFT, RRTTree.UP)) {
+            return intersects(boxX + width, boxY + width / 2.0, half, obst)
+                    || intersects(boxX + width / 2.0, boxY + width, half, obst);
             // Case 4: Robot switch frm right side of box to top side or vice versa.
-        } else if ((parent.getDirection().equals("l") && child.getDirection().equals("d"))
-                || (parent.getDirection().equals("d") && child.getDirection().equals("l"))) {
-            Point2D rightBoxPoint = new Point2D.Double((box.getX() + box.getWidth()), box.getY());
-            Point2D upBoxPoint = new Point2D.Double(box.getCenterX(), (box.getY() - box.getWidth()));
-            Box rightBox = new MovingBox(rightBoxPoint, (box.getWidth() / 2));
-            Box upBox = new MovingBox(upBoxPoint, (box.getWidth() / 2));
-
-            return rightBox.getRect().intersects(obst.getX(), obst.getY(), obst.getWidth(), obst.getWidth())
-                    || upBox.getRect().intersects(obst.getX(), obst.getY(), obst.getWidth(), obst.getWidth());
+        } else if (turns(parentDirection, childDirection, RRTTree.LEFT, RRTTree.DOWN)) {
+            return intersects(boxX + width, boxY, half, obst)
+                    || intersects(boxX + width / 2.0, boxY - width, half, obst);
             // Case 5: robot not switching sides
         } else {
             return false;
         }
     }
 
+    /**
+     * @return true if the push directions are the two given ones, in either order
+     */
+    private static boolean turns(byte parentDirection, byte childDirection, byte a, byte b) {
+        return (parentDirection == a && childDirection == b) || (parentDirection == b && childDirection == a);
+    }
+
+    /**
+     * check if a square intersects an obstacle, with the same arithmetic as Rectangle2D.intersects
+     * @param x x of the square
+     * @param y y of the square
+     * @param size the width and height of the square
+     * @param obst the position of the obstacle in the obstacles array
+     * @return true if the interiors overlap
+     */
+    private boolean intersects(double x, double y, double size, int obst) {
+        double w = obstacles[obst + 2];
+        double h = obstacles[obst + 3];
+        if (size <= 0 || w <= 0 || h <= 0) {
+            return false;
+        }
+        return obstacles[obst] + w > x && obstacles[obst + 1] + h > y
+                && obstacles[obst] < x + size && obstacles[obst + 1] < y + size;
+    }
+
     public LinkedList<Point2D> getCoordPath() {
         return coordPath;
     }
 
+    /**
+     * @return the number of random positions drawn by the tree pair that found the path, refinement included
+     */
+    public int getSamples() {
+        return samples;
+    }
+
 
     /**
-     * A private Node class that stores the required information about each node in RRT
+     * A tree grown from the start and a tree grown from the goal, with their own source of random positions.
+     * Several pairs can be grown at once, each by one thread.
      */
-    public class Node {
-        // Class Variables //
-        private Point2D currPos;
-        private double xPos;
-        private double yPos;
-        private String direction = null; // Only the root node will have null direction
-        private Node parent = null; // Only the root node will have null parent
-
-        // Constructors //
-        private Node(Point2D pos) {
-            currPos = pos;
-            xPos = pos.getX();
-            yPos = pos.getY();
-        }
-
-        // Methods //
-
-        @Override
-        public boolean equals(Object o) {
-            if (o instanceof Node) {
-                Node n = (Node) o;
-                return n.getCurrPos().equals((currPos));
+    private class TreePair {
+        private RRTTree startTree = new RRTTree(STEP_SIZE, startX, startY);
+        private RRTTree endTree = new RRTTree(STEP_SIZE, endX, endY);
+        private Sampler sampler;
+        // RRT* mode: ids of the adjacent nodes joining the trees, the node of the start tree first
+        private int[] joins = new int[16];
+        private int joinCount = 0;
+        // RRT* mode: space for the children of a node and for the nodes whose costs are lowered
+        private int[] children = new int[NEIGHBOURS.length];
+        private int[] stack = new int[16];
+        // Frontier bias: the coarse cells in freeCoarseCells each tree has no node in, and the position
+        // of every coarse cell in the list of a tree, -1 once the tree reached it
+        private int[][] unexplored;
+        private int[][] unexploredAt;
+        private int[] unexploredCount;
+        // Random position of the current sample in micro-units
+        private int randX;
+        private int randY;
+        private int samples = 0;
+
+        private TreePair(Sampler sampler) {
+            this.sampler = sampler;
+            if (frontierBias > 0) {
+                unexplored = new int[2][];
+                unexploredAt = new int[2][COARSE_SIDE * COARSE_SIDE];
+                unexploredCount = new int[2];
+                for (int t = 0; t < 2; t++) {
+                    unexplored[t] = freeCoarseCells.clone();
+                    unexploredCount[t] = freeCoarseCells.length;
+                    Arrays.fill(unexploredAt[t], -1);
+                    for (int k = 0; k < freeCoarseCells.length; k++) {
+                        unexploredAt[t][freeCoarseCells[k]] = k;
+                    }
+                }
+                explore(0, startX, startY);
+                explore(1, endX, endY);
             }
-            return false;
         }
 
-        private  Point2D getCurrPos() {
-            return currPos;
+        /**
+         * take the coarse cell of a new node off the unexplored cells of its tree
+         * @param t 0 for the start tree, 1 for the end tree
+         * @param x x of the node in micro-units
+         * @param y y of the node in micro-units
+         */
+        private void explore(int t, int x, int y) {
+            int col = x / STEP_SIZE;
+            int row = y / STEP_SIZE;
+            if (col < 0 || row < 0 || col >= SIDE || row >= SIDE) {
+                return;
+            }
+            int cell = coarseCell(col, row);
+            int k = unexploredAt[t][cell];
+            if (k >= 0) {
+                // move the last cell of the list into the gap
+                int last = unexplored[t][--unexploredCount[t]];
+                unexplored[t][k] = last;
+                unexploredAt[t][last] = k;
+                unexploredAt[t][cell] = -1;
+            }
         }
 
-        private double getX() {
-            return xPos;
+        /**
+         * pick the position to step toward, setting randX and randY
+         * @param sample the coordinates of the next sample
+         * @param flip false when growing the start tree, true when growing the end tree
+         * @param other the tree not being grown
+         */
+        private void target(double[] sample, boolean flip, RRTTree other) {
+            double choice = sample.length > 2 ? sample[2] : 1;
+            if (choice < goalBias) {
+                randX = other.getX(other.size() - 1);
+                randY = other.getY(other.size() - 1);
+                return;
+            }
+            int t = flip ? 1 : 0;
+            if (choice < goalBias + frontierBias && unexploredCount[t] > 0) {
+                int cell = unexplored[t][pick(sample[0], unexploredCount[t])];
+                int k = pick(sample[1], COARSE_STEPS * COARSE_STEPS);
+                randX = ((cell % COARSE_SIDE) * COARSE_STEPS + k % COARSE_STEPS) * STEP_SIZE;
+                randY = ((cell / COARSE_SIDE) * COARSE_STEPS + k / COARSE_STEPS) * STEP_SIZE;
+            } else if (freePoints != null) {
+                int point = freePoints[pick(sample[0], freePoints.length)];
+                randX = (point % SIDE) * STEP_SIZE;
+                randY = (point / SIDE) * STEP_SIZE;
+            } else {
+                randX = (int) (sample[0] * SIDE) * STEP_SIZE;
+                randY = (int) (sample[1] * SIDE) * STEP_SIZE;
+            }
         }
 
-        private double getY() {
-            return yPos;
+        /**
+         * @return the index a coordinate in [0, 1) falls at among n
+         */
+        private int pick(double coordinate, int n) {
+            return Math.min(n - 1, (int) (coordinate * n));
         }
 
         /**
-         * Search for the closest Node from the given list in relation to this Node.
-         * @param list the list to be searched
-         * @return the closest Node from the list
+         * the main algorithm of RRT, switches between finding a path from start and goal.
+         * In RRT* mode the trees keep growing after they connect until the refinement samples are spent.
+         * @return a LinkedList filled with Point2D objects that forms a path from start to goal,
+         * null if no path was found or another pair connected first.
          */
-        private Node nearestNode(List<Node> list) {
-            double distance = 2000; // The maximum distance between 2 points in a 1x1 grid is sqrt(2)
-            Node node = null;
-            for (Node n : list) {
-                Double length = Math.abs(n.getY() - this.getY());
-                Double width = Math.abs(n.getX() - this.getY());
-                if ((length + width) < distance) {
-                    distance = (length + width);
-                    node = n;
+        private LinkedList<Point2D> pathSearch() {
+            // flip determines whether to expand the path from start node or goal node. False = start, True = goal
+            boolean flip = false;
+            double[] sample = new double[goalBias > 0 || frontierBias > 0 ? 3 : 2];
+            int budget = refinement;
+            while ((joinCount > 0 || !connected.get()) && startTree.size() + endTree.size() < MAX_NODES
+                    && samples < MAX_SAMPLES) {
+                if (joinCount > 0 && budget-- == 0) {
+                    break;
+                }
+                // Make random position
+                RRTTree tree = flip ? endTree : startTree;
+                RRTTree other = flip ? startTree : endTree;
+                sampler.next(sample);
+                samples++;
+                target(sample, flip, other);
+
+                // Find the nearest Node
+                int nearNode = tree.nearest(randX, randY);
+
+                // Make new Node a STEP_SIZE closer towards the random position from nearNode
+                // step on the axis that is furtherest away from nearNode
+                int xDist = randX - tree.getX(nearNode);
+                int yDist = randY - tree.getY(nearNode);
+                byte direction;
+                if (Math.abs(xDist) >= Math.abs(yDist)) {
+                    direction = xDist > 0 ? RRTTree.RIGHT : RRTTree.LEFT;
+                } else {
+                    direction = yDist > 0 ? RRTTree.DOWN : RRTTree.UP;
+                }
+                int newX = tree.getX(nearNode) + NEIGHBOURS[direction][0];
+                int newY = tree.getY(nearNode) + NEIGHBOURS[direction][1];
+
+                // Check if newNode pos is not blocked and robot has enough room to move, else start a next random search
+                if (!canMove(newX, newY, tree.getDirection(nearNode), direction)) {
+                    continue;
+                }
+                // Check if newNode already exists in either tree
+                if (startTree.find(newX, newY) >= 0 || endTree.find(newX, newY) >= 0) {
+                    continue;
+                }
+
+                // All constraints has been checked and passed, add newNode to its tree
+                int newNode = tree.add(newX, newY, nearNode, direction);
+                if (unexplored != null) {
+                    explore(flip ? 1 : 0, newX, newY);
+                }
+                if (refinement > 0) {
+                    chooseParent(tree, newNode);
+                    rewire(tree, newNode);
+                }
+
+                if (refinement == 0) {
+                    // check if newNode is a STEP next to nodes of the other tree, if it is, return a path
+                    int adjNode = nextToTree(newX, newY, other);
+                    if (adjNode >= 0) {
+                        // Another pair may have connected in the meantime, only the first one keeps its path
+                        return connected.compareAndSet(false, true) ? tracePath(tree, newNode, other, adjNode) : null;
+                    }
+                } else {
+                    // keep every join of newNode with the other tree, the shortest is picked at the end
+                    boolean first = joinCount == 0;
+                    for (int[] offset : NEIGHBOURS) {
+                        int id = other.find(newX + offset[0], newY + offset[1]);
+                        if (id >= 0) {
+                            addJoin(flip ? id : newNode, flip ? newNode : id);
+                        }
+                    }
+                    if (first && joinCount > 0 && !connected.compareAndSet(false, true)) {
+                        return null;
+                    }
+                }
+                // start another search, switch list around
+                flip = !flip;
+            }
+            if (joinCount == 0) {
+                // if this code is reached, another pair connected or the trees hold
+                // the MAX_NODE number of nodes
+                return null;
+            }
+            int best = 0;
+            for (int j = 2; j < 2 * joinCount; j += 2) {
+                if (startTree.getCost(joins[j]) + endTree.getCost(joins[j + 1])
+                        < startTree.getCost(joins[best]) + endTree.getCost(joins[best + 1])) {
+                    best = j;
                 }
             }
-            return node;
+            return tracePath(startTree, joins[best], endTree, joins[best + 1]);
         }
 
         /**
-         * search for any Node in the given list that is STEP_SIZE away from this Node
-         * @param list the list to be searched with
-         * @return the Node that is STEP_SIZE away from this Node, if there is none returns null
+         * search for a node of the given tree that is STEP_SIZE away from a position
+         * @param x x in micro-units
+         * @param y y in micro-units
+         * @param tree the tree to be searched
+         * @return the lowest id of a node STEP_SIZE away, -1 if there is none
          */
-        private Node nextToList(List<Node> list) {
-            for (Node n : list) {
-                if ((xPos + STEP_SIZE == n.getX() && yPos == n.getY())
-                        || (xPos - STEP_SIZE == n.getX() && yPos == n.getY())
-                        || (yPos + STEP_SIZE == n.getY() && xPos == n.getX())
-                        || (yPos - STEP_SIZE == n.getY() && xPos == n.getX())) {
-                    return n;
+        private int nextToTree(int x, int y, RRTTree tree) {
+            int first = -1;
+            for (int[] offset : NEIGHBOURS) {
+                int id = tree.find(x + offset[0], y + offset[1]);
+                if (id >= 0 && (first < 0 || id < first)) {
+                    first = id;
                 }
             }
-            return null;
+            return first;
         }
 
-        private void setParent(Node node) {
-            parent = node;
+        private void addJoin(int startNode, int endNode) {
+            if (2 * joinCount == joins.length) {
+                joins = Arrays.copyOf(joins, 2 * joins.length);
+            }
+            joins[2 * joinCount] = startNode;
+            joins[2 * joinCount + 1] = endNode;
+            joinCount++;
+        }
+
+        /**
+         * join the paths from two adjacent nodes of different trees back to their roots
+         * @param tree1 the tree of node1
+         * @param node1 the node of one tree
+         * @param tree2 the tree of node2
+         * @param node2 the node of the other tree
+         * @return the positions from start to goal
+         */
+        private LinkedList<Point2D> tracePath(RRTTree tree1, int node1, RRTTree tree2, int node2) {
+            // Backtrack from node1, trace the path back to root
+            LinkedList<Point2D> path1 = new LinkedList<>();
+            for (int v = node1; v >= 0; v = tree1.getParent(v)) {
+                path1.addFirst(new Point2D.Double(FixedPoint.toDouble(tree1.getX(v)), FixedPoint.toDouble(tree1.getY(v))));
+            }
+
+            // Backtrack from node2, trace the path back to root
+            LinkedList<Point2D> path2 = new LinkedList<>();
+            for (int v = node2; v >= 0; v = tree2.getParent(v)) {
+                path2.addLast(new Point2D.Double(FixedPoint.toDouble(tree2.getX(v)), FixedPoint.toDouble(tree2.getY(v))));
+            }
+            path1.addAll(path2);
+
+            // Check if the list is back to front
+            if (tree1.getX(0) == endX && tree1.getY(0) == endY) {
+                Collections.reverse(path1);
+            }
+            return path1;
         }
 
-        private Node getParent() {
-            return parent;
+        /**
+         * RRT* choice of parent: give a new node the cheapest parent among its lattice neighbours
+         * in the tree that the box can be pushed from.
+         * @param tree the tree of the node
+         * @param node the new node, its parent is the node it was stepped from
+         */
+        private void chooseParent(RRTTree tree, int node) {
+            int x = tree.getX(node);
+            int y = tree.getY(node);
+            for (byte direction = 0; direction < NEIGHBOURS.length; direction++) {
+                // the parent is the opposite way of the step
+                int parent = tree.find(x - NEIGHBOURS[direction][0], y - NEIGHBOURS[direction][1]);
+                if (parent >= 0 && tree.getCost(parent) + 1 < tree.getCost(node)
+                        && canMove(x, y, tree.getDirection(parent), direction)) {
+                    tree.setParent(node, parent, direction);
+                }
+            }
         }
 
-        private String getDirection() {
-            return direction;
+        /**
+         * RRT* rewiring: make a new node the parent of its lattice neighbours in the tree it is a cheaper
+         * parent for. A rewired neighbour is pushed in another direction, so the robot must have room for the
+         * turns into it and out of it to its children. The costs of its subtree are lowered to match.
+         * @param tree the tree of the node
+         * @param node the new node
+         */
+        private void rewire(RRTTree tree, int node) {
+            for (byte direction = 0; direction < NEIGHBOURS.length; direction++) {
+                int neighbour = tree.find(tree.getX(node) + NEIGHBOURS[direction][0],
+                        tree.getY(node) + NEIGHBOURS[direction][1]);
+                if (neighbour < 0 || tree.getParent(neighbour) < 0 || tree.getCost(node) + 1 >= tree.getCost(neighbour)
+                        || !canMove(tree.getX(neighbour), tree.getY(neighbour), tree.getDirection(node), direction)) {
+                    continue;
+                }
+                int count = children(tree, neighbour);
+                boolean room = true;
+                for (int c = 0; c < count && room; c++) {
+                    room = canMove(tree.getX(children[c]), tree.getY(children[c]), direction,
+                            tree.getDirection(children[c]));
+                }
+                if (!room) {
+                    continue;
+                }
+                int saving = tree.getCost(neighbour) - tree.getCost(node) - 1;
+                tree.setParent(neighbour, node, direction);
+                int top = 0;
+                for (int c = 0; c < count; c++) {
+                    top = push(top, children[c]);
+                }
+                while (top > 0) {
+                    int descendant = stack[--top];
+                    tree.setCost(descendant, tree.getCost(descendant) - saving);
+                    int n = children(tree, descendant);
+                    for (int c = 0; c < n; c++) {
+                        top = push(top, children[c]);
+                    }
+                }
+            }
         }
 
         /**
-         * the direction the robot has to in relation to this Node's parent.
-         * @param direction u = up, d = down, l = left, r = right
+         * find the nodes whose parent is the given node, they are among its lattice neighbours
+         * @param tree the tree of the node
+         * @param node the node
+         * @return the number of children, put at the start of the children array
          */
-        private void setDirection(String direction) {
-            if (this.direction == null) {
-                this.direction = direction;
+        private int children(RRTTree tree, int node) {
+            int count = 0;
+            for (int[] offset : NEIGHBOURS) {
+                int id = tree.find(tree.getX(node) + offset[0], tree.getY(node) + offset[1]);
+                if (id >= 0 && tree.getParent(id) == node) {
+                    children[count++] = id;
+                }
+            }
+            return count;
+        }
+
+        private int push(int top, int node) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, 2 * top);
             }
+            stack[top] = node;
+            return top + 1;
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,129 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * A tree of box positions grown by RRT, held in flat arrays. Nodes are numbered from 0 in the order
+ * they are added, the root first. The positions are kept by a LatticeIndex, which also finds nodes by
+ * position, and each node has the id of its parent, the direction of the push from its parent and its
+ * number of steps from the root in one primitive array each.
+ */
+public class RRTTree {
+    /** Directions of a push, the box moves right, left, down or up by one step */
+    public static final byte RIGHT = 0;
+    public static final byte LEFT = 1;
+    public static final byte DOWN = 2;
+    public static final byte UP = 3;
+    /** Direction of the root, which has no parent */
+    public static final byte NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private LatticeIndex index;
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private byte[] directions = new byte[INITIAL_CAPACITY];
+    private int[] costs = new int[INITIAL_CAPACITY];
+
+    /**
+     * A tree holding only its root
+     * @param cell the distance between lattice points in micro-units
+     * @param x x of the root in micro-units
+     * @param y y of the root in micro-units
+     */
+    public RRTTree(int cell, int x, int y) {
+        index = new LatticeIndex(cell);
+        index.add(x, y);
+        parents[0] = -1;
+        directions[0] = NONE;
+    }
+
+    /**
+     * Add a node one step from its parent
+     * @param x x in micro-units
+     * @param y y in micro-units
+     * @param parent the id of the parent
+     * @param direction the direction of the push from the parent
+     * @return the id of the node
+     */
+    public int add(int x, int y, int parent, byte direction) {
+        int v = index.add(x, y);
+        if (v == parents.length) {
+            parents = Arrays.copyOf(parents, 2 * v);
+            directions = Arrays.copyOf(directions, 2 * v);
+            costs = Arrays.copyOf(costs, 2 * v);
+        }
+        parents[v] = parent;
+        directions[v] = direction;
+        costs[v] = costs[parent] + 1;
+        return v;
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    public int size() {
+        return index.size();
+    }
+
+    public int getX(int v) {
+        return index.getX(v);
+    }
+
+    public int getY(int v) {
+        return index.getY(v);
+    }
+
+    /**
+     * @param v the id of the node
+     * @return the id of the parent, -1 for the root
+     */
+    public int getParent(int v) {
+        return parents[v];
+    }
+
+    /**
+     * @param v the id of the node
+     * @return the direction of the push from the parent, NONE for the root
+     */
+    public byte getDirection(int v) {
+        return directions[v];
+    }
+
+    /**
+     * @param v the id of the node
+     * @return the number of steps from the root
+     */
+    public int getCost(int v) {
+        return costs[v];
+    }
+
+    public void setCost(int v, int cost) {
+        costs[v] = cost;
+    }
+
+    /**
+     * Give a node another parent one step from it. The costs of its children are left for the caller to update.
+     * @param v the id of the node
+     * @param parent the id of the new parent
+     * @param direction the direction of the push from the new parent
+     */
+    public void setParent(int v, int parent, byte direction) {
+        parents[v] = parent;
+        directions[v] = direction;
+        costs[v] = costs[parent] + 1;
+    }
+
+    /**
+     * @return the lowest id of a node at (x, y), -1 if there is none
+     */
+    public int find(int x, int y) {
+        return index.find(x, y);
+    }
+
+    /**
+     * @return the lowest id of the nodes nearest to (x, y) by Manhattan distance
+     */
+    public int nearest(int x, int y) {
+        return index.nearest(x, y);
+    }
+}
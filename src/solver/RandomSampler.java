@@ -0,0 +1,65 @@
+package solver;
+
+import java.util.SplittableRandom;
+
+/**
+ * Uniform random samples from a SplittableRandom. A seeded sampler and the samplers split off it
+ * give the same samples on every run.
+ */
+public class RandomSampler implements Sampler {
+    private int dimension;
+    private SplittableRandom random;
+    //the seed, followed by the split number of every split on the way from the seeded sampler
+    private String name;
+    //number of samplers split off this one so far
+    private int splits = 0;
+
+    /**
+     * A sampler with a random seed
+     * @param dimension the number of coordinates of every sample
+     */
+    public RandomSampler(int dimension) {
+        this(dimension, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * A sampler giving the same samples for the same seed
+     * @param dimension the number of coordinates of every sample
+     * @param seed the seed
+     */
+    public RandomSampler(int dimension, long seed) {
+        this(dimension, new SplittableRandom(seed), Long.toString(seed));
+    }
+
+    private RandomSampler(int dimension, SplittableRandom random, String name) {
+        this.dimension = dimension;
+        this.random = random;
+        this.name = name;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public void next(double[] point) {
+        for (int i = 0; i < point.length; i++) {
+            point[i] = random.nextDouble();
+        }
+    }
+
+    @Override
+    public Sampler split() {
+        splits++;
+        return new RandomSampler(dimension, random.split(), name + "." + splits);
+    }
+
+    /**
+     * @return the class name followed by the seed, so every seed has a roadmap of its own in the cache
+     */
+    @Override
+    public String getName() {
+        return getClass().getName() + " " + name;
+    }
+}
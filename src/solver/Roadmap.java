@@ -0,0 +1,364 @@
+package solver;
+
+import problem.RobotConfig;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A roadmap of robot configs held in flat arrays. Vertices are numbered from 0 in the order they
+ * are added, with their x, y and angle in one double array each. The out edges of every vertex are
+ * a row of one int array of neighbour ids, in compressed sparse row form: each vertex has the offset
+ * of its row, the number of neighbours in it and the space the row has. A row that runs out of space
+ * moves to the end of the array, and the array is compacted when most of it is left behind by moves.
+ * Each edge also has a flag telling if it has been collision checked, for Lazy PRM.
+ * Removed vertices keep their id until the vertex with the highest id is removed.
+ */
+public class Roadmap {
+    private static final int INITIAL_CAPACITY = 16;
+
+    //number of ids in use, removed ones included
+    private int size = 0;
+    private double[] xs;
+    private double[] ys;
+    private double[] angles;
+    private BitSet removed = new BitSet();
+
+    //start of the row of every vertex in targets, its number of neighbours and its space
+    private int[] offsets;
+    private int[] degrees;
+    private int[] capacities;
+    //neighbour ids of all rows, and if each edge has been checked
+    private int[] targets;
+    private boolean[] checked;
+    //end of the used part of targets
+    private int used = 0;
+    private int edges = 0;
+
+    /**
+     * An empty roadmap
+     */
+    public Roadmap() {
+        xs = new double[INITIAL_CAPACITY];
+        ys = new double[INITIAL_CAPACITY];
+        angles = new double[INITIAL_CAPACITY];
+        offsets = new int[INITIAL_CAPACITY];
+        degrees = new int[INITIAL_CAPACITY];
+        capacities = new int[INITIAL_CAPACITY];
+        targets = new int[INITIAL_CAPACITY];
+        checked = new boolean[INITIAL_CAPACITY];
+    }
+
+    /**
+     * A roadmap over the given arrays, e.g. read from a file. The arrays are used, not copied.
+     * @param xs x of every vertex
+     * @param ys y of every vertex
+     * @param angles angle of every vertex
+     * @param rowOffsets start of the row of each vertex in targets, with the end of the last row at the end
+     * @param targets the neighbour ids of all rows
+     */
+    public Roadmap(double[] xs, double[] ys, double[] angles, int[] rowOffsets, int[] targets) {
+        this.size = xs.length;
+        this.xs = xs;
+        this.ys = ys;
+        this.angles = angles;
+        this.offsets = Arrays.copyOf(rowOffsets, Math.max(size, 1));
+        this.degrees = new int[Math.max(size, 1)];
+        for (int v = 0; v < size; v++) {
+            degrees[v] = rowOffsets[v + 1] - rowOffsets[v];
+        }
+        this.capacities = degrees.clone();
+        this.targets = targets.length > 0 ? targets : new int[INITIAL_CAPACITY];
+        this.checked = new boolean[this.targets.length];
+        this.used = rowOffsets[size];
+        this.edges = used;
+    }
+
+    /**
+     * Add a vertex with no edges
+     * @param rc the robot config of the vertex
+     * @return the id of the vertex
+     */
+    public int addVertex(RobotConfig rc) {
+        return addVertex(rc.getPos().getX(), rc.getPos().getY(), rc.getOrientation());
+    }
+
+    /**
+     * Add a vertex with no edges
+     * @return the id of the vertex
+     */
+    public int addVertex(double x, double y, double angle) {
+        if (size == xs.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, 2 * size);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            angles = Arrays.copyOf(angles, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            degrees = Arrays.copyOf(degrees, capacity);
+            capacities = Arrays.copyOf(capacities, capacity);
+        }
+        int v = size++;
+        xs[v] = x;
+        ys[v] = y;
+        angles[v] = angle;
+        offsets[v] = used;
+        degrees[v] = 0;
+        capacities[v] = 0;
+        removed.clear(v);
+        return v;
+    }
+
+    /**
+     * Remove a vertex and its out edges. Edges into it are left for the caller to remove.
+     * @param v the id of the vertex
+     */
+    public void removeVertex(int v) {
+        edges -= degrees[v];
+        degrees[v] = 0;
+        removed.set(v);
+        //free the highest ids so they are used again
+        while (size > 0 && removed.get(size - 1)) {
+            removed.clear(--size);
+        }
+    }
+
+    /**
+     * @return the number of ids in use, every vertex id is below it
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of edges
+     */
+    public int edgeCount() {
+        return edges;
+    }
+
+    /**
+     * @param v an id
+     * @return true if the id is a vertex of the roadmap
+     */
+    public boolean contains(int v) {
+        return v >= 0 && v < size && !removed.get(v);
+    }
+
+    /**
+     * Find the vertex at a robot config
+     * @param rc the robot config
+     * @return the id of the vertex with the same x, y and angle, -1 if there is none
+     */
+    public int indexOf(RobotConfig rc) {
+        for (int v = 0; v < size; v++) {
+            if (xs[v] == rc.getPos().getX() && ys[v] == rc.getPos().getY() && angles[v] == rc.getOrientation()
+                    && !removed.get(v)) {
+                return v;
+            }
+        }
+        return -1;
+    }
+
+    public double getX(int v) {
+        return xs[v];
+    }
+
+    public double getY(int v) {
+        return ys[v];
+    }
+
+    public double getAngle(int v) {
+        return angles[v];
+    }
+
+    /**
+     * @param v the id of the vertex
+     * @return a new robot config at the vertex
+     */
+    public RobotConfig getConfig(int v) {
+        return new RobotConfig(new Point2D.Double(xs[v], ys[v]), angles[v]);
+    }
+
+    /**
+     * @param v the id of the vertex
+     * @return the number of out edges of the vertex
+     */
+    public int degree(int v) {
+        return degrees[v];
+    }
+
+    /**
+     * @param v the id of the vertex
+     * @param i the position of the edge in the row of the vertex, below its degree
+     * @return the id of the neighbour
+     */
+    public int neighbor(int v, int i) {
+        return targets[offsets[v] + i];
+    }
+
+    /**
+     * @param v the id of the vertex
+     * @param i the position of the edge in the row of the vertex, below its degree
+     * @return true if the edge has been collision checked
+     */
+    public boolean isChecked(int v, int i) {
+        return checked[offsets[v] + i];
+    }
+
+    /**
+     * Mark an edge as collision checked
+     * @param v the id of the vertex
+     * @param i the position of the edge in the row of the vertex, below its degree
+     */
+    public void setChecked(int v, int i) {
+        checked[offsets[v] + i] = true;
+    }
+
+    /**
+     * Mark every edge as collision checked
+     */
+    public void setAllChecked() {
+        Arrays.fill(checked, 0, used, true);
+    }
+
+    /**
+     * @param from the id of the vertex
+     * @param to the id of the neighbour
+     * @return the position of the edge in the row of from, -1 if there is no such edge
+     */
+    public int indexOfEdge(int from, int to) {
+        int start = offsets[from];
+        for (int i = 0; i < degrees[from]; i++) {
+            if (targets[start + i] == to) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replace the out edges of a vertex, in the given order. Edges that stay keep their checked flag.
+     * @param v the id of the vertex
+     * @param neighbors the ids of the new neighbours
+     * @param count the number of neighbours to take from the start of the array
+     */
+    public void setNeighbors(int v, int[] neighbors, int count) {
+        boolean[] flags = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            int old = indexOfEdge(v, neighbors[i]);
+            flags[i] = old >= 0 && isChecked(v, old);
+        }
+        edges -= degrees[v];
+        degrees[v] = 0;
+        if (capacities[v] < count) {
+            moveRow(v, count);
+        }
+        System.arraycopy(neighbors, 0, targets, offsets[v], count);
+        System.arraycopy(flags, 0, checked, offsets[v], count);
+        degrees[v] = count;
+        edges += count;
+    }
+
+    /**
+     * Add an unchecked edge at the end of the row of a vertex
+     * @param from the id of the vertex
+     * @param to the id of the neighbour
+     */
+    public void addEdge(int from, int to) {
+        if (degrees[from] == capacities[from]) {
+            moveRow(from, Math.max(4, 2 * capacities[from]));
+        }
+        int slot = offsets[from] + degrees[from]++;
+        targets[slot] = to;
+        checked[slot] = false;
+        edges++;
+    }
+
+    /**
+     * Remove an edge, keeping the order of the rest of the row
+     * @param from the id of the vertex
+     * @param to the id of the neighbour
+     * @return true if there was such an edge
+     */
+    public boolean removeEdge(int from, int to) {
+        int i = indexOfEdge(from, to);
+        if (i < 0) {
+            return false;
+        }
+        removeAt(from, i);
+        return true;
+    }
+
+    /**
+     * Remove the edges of a vertex into any of the given vertices, keeping the order of the rest of the row
+     * @param from the id of the vertex
+     * @param vertices the ids of the neighbours to drop
+     * @return the number of edges removed
+     */
+    public int removeEdgesTo(int from, BitSet vertices) {
+        int start = offsets[from];
+        int kept = 0;
+        for (int i = 0; i < degrees[from]; i++) {
+            if (!vertices.get(targets[start + i])) {
+                targets[start + kept] = targets[start + i];
+                checked[start + kept] = checked[start + i];
+                kept++;
+            }
+        }
+        int dropped = degrees[from] - kept;
+        degrees[from] = kept;
+        edges -= dropped;
+        return dropped;
+    }
+
+    private void removeAt(int v, int i) {
+        int start = offsets[v];
+        int tail = degrees[v] - i - 1;
+        System.arraycopy(targets, start + i + 1, targets, start + i, tail);
+        System.arraycopy(checked, start + i + 1, checked, start + i, tail);
+        degrees[v]--;
+        edges--;
+    }
+
+    /**
+     * Move the row of a vertex to the end of targets, with space for the given number of neighbours
+     */
+    private void moveRow(int v, int capacity) {
+        if (used + capacity > targets.length) {
+            //rows left behind by moves take most of the array
+            if (used > 2 * edges) {
+                compact();
+            }
+            if (used + capacity > targets.length) {
+                int length = Math.max(2 * targets.length, used + capacity);
+                targets = Arrays.copyOf(targets, length);
+                checked = Arrays.copyOf(checked, length);
+            }
+        }
+        System.arraycopy(targets, offsets[v], targets, used, degrees[v]);
+        System.arraycopy(checked, offsets[v], checked, used, degrees[v]);
+        offsets[v] = used;
+        capacities[v] = capacity;
+        used += capacity;
+    }
+
+    /**
+     * Put the rows next to each other in id order, each with no more space than its degree
+     */
+    public void compact() {
+        int[] newTargets = new int[Math.max(edges, INITIAL_CAPACITY)];
+        boolean[] newChecked = new boolean[newTargets.length];
+        int next = 0;
+        for (int v = 0; v < size; v++) {
+            System.arraycopy(targets, offsets[v], newTargets, next, degrees[v]);
+            System.arraycopy(checked, offsets[v], newChecked, next, degrees[v]);
+            offsets[v] = next;
+            capacities[v] = degrees[v];
+            next += degrees[v];
+        }
+        targets = newTargets;
+        checked = newChecked;
+        used = next;
+    }
+}
@@ -0,0 +1,193 @@
+package solver;
+
+import problem.ProblemSpec;
+import problem.StaticObstacle;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A binary file holding a roadmap that was only checked against the static obstacles,
+ * so it can be reused by every problem with the same static geometry whatever the boxes are.
+ * The file holds flat arrays: the x, y and angle of every vertex, then the adjacency in
+ * compressed sparse row form (the offset of each vertex into one array of neighbour indices).
+ * Neighbours keep the order of their sets, which is nearest first for the sets PRM builds.
+ * These are the arrays of a Roadmap, and they are read through a memory mapping straight into it.
+ */
+public class RoadmapCache {
+    private static final int MAGIC = 0x50524D43;
+    private static final int VERSION = 1;
+    //magic, version, key, vertex count, edge count
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4;
+
+    private RoadmapCache() {
+    }
+
+    /**
+     * Get the key of a roadmap, a hash of everything the static roadmap depends on
+     * @param ps the problem, its static obstacles and robot width are used
+     * @param samples number of sampled vertices
+     * @param neighbors number of neighbours of each vertex
+     * @param sampler name of the samples the vertices come from, see Sampler.getName
+     * @return the key
+     */
+    public static long key(ProblemSpec ps, int samples, int neighbors, String sampler) {
+        //64 bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        List<Long> words = new ArrayList<>();
+        words.add((long) VERSION);
+        words.add((long) samples);
+        words.add((long) neighbors);
+        words.add(Double.doubleToLongBits(ps.getRobotWidth()));
+        words.add((long) sampler.hashCode());
+        for (StaticObstacle o : ps.getStaticObstacles()) {
+            Rectangle2D rect = o.getRect();
+            words.add(Double.doubleToLongBits(rect.getX()));
+            words.add(Double.doubleToLongBits(rect.getY()));
+            words.add(Double.doubleToLongBits(rect.getWidth()));
+            words.add(Double.doubleToLongBits(rect.getHeight()));
+        }
+        for (long word : words) {
+            for (int i = 0; i < 8; i++) {
+                hash ^= (word >>> (8 * i)) & 0xff;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @param dir the cache directory
+     * @param key the key of the roadmap
+     * @return the file of the roadmap with the given key
+     */
+    public static File file(File dir, long key) {
+        return new File(dir, "roadmap-" + Long.toHexString(key) + ".bin");
+    }
+
+    /**
+     * Load a roadmap
+     * @param file the file to read
+     * @param key the key the roadmap must have
+     * @return the roadmap with the neighbours in their saved order, null if there is no file or it holds another roadmap
+     * @throws IOException if the file can not be read
+     */
+    public static Roadmap load(File file, long key) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != key) {
+                return null;
+            }
+            int count = buffer.getInt();
+            int edges = buffer.getInt();
+            if (channel.size() != size(count, edges)) {
+                return null;
+            }
+
+            //the arrays of the file are the arrays of the roadmap, so they are copied in bulk
+            double[] xs = new double[count];
+            double[] ys = new double[count];
+            double[] angles = new double[count];
+            int[] offsets = new int[count + 1];
+            int[] targets = new int[edges];
+            buffer.asDoubleBuffer().get(xs).get(ys).get(angles);
+            buffer.position(buffer.position() + 8 * 3 * count);
+            buffer.asIntBuffer().get(offsets).get(targets);
+            return new Roadmap(xs, ys, angles, offsets, targets);
+        }
+    }
+
+    /**
+     * Save a roadmap, replacing any file with the same name
+     * @param file the file to write
+     * @param key the key of the roadmap
+     * @param roadmap the roadmap, its vertices are numbered again without the removed ones
+     * @throws IOException if the file can not be written
+     */
+    public static void save(File file, long key, Roadmap roadmap) throws IOException {
+        int[] index = new int[roadmap.size()];
+        int count = 0;
+        int edges = 0;
+        for (int v = 0; v < roadmap.size(); v++) {
+            index[v] = roadmap.contains(v) ? count++ : -1;
+        }
+        for (int v = 0; v < roadmap.size(); v++) {
+            for (int i = 0; index[v] >= 0 && i < roadmap.degree(v); i++) {
+                if (index[roadmap.neighbor(v, i)] >= 0) {
+                    edges++;
+                }
+            }
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can not create " + dir);
+        }
+        //written next to the target and renamed, so a reader never maps a half written file
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(size(count, edges));
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size(count, edges));
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(key).putInt(count).putInt(edges);
+            for (int v = 0; v < roadmap.size(); v++) {
+                if (index[v] >= 0) {
+                    buffer.putDouble(roadmap.getX(v));
+                }
+            }
+            for (int v = 0; v < roadmap.size(); v++) {
+                if (index[v] >= 0) {
+                    buffer.putDouble(roadmap.getY(v));
+                }
+            }
+            for (int v = 0; v < roadmap.size(); v++) {
+                if (index[v] >= 0) {
+                    buffer.putDouble(roadmap.getAngle(v));
+                }
+            }
+            int offset = 0;
+            for (int v = 0; v < roadmap.size(); v++) {
+                if (index[v] >= 0) {
+                    buffer.putInt(offset);
+                    for (int i = 0; i < roadmap.degree(v); i++) {
+                        if (index[roadmap.neighbor(v, i)] >= 0) {
+                            offset++;
+                        }
+                    }
+                }
+            }
+            buffer.putInt(offset);
+            for (int v = 0; v < roadmap.size(); v++) {
+                for (int i = 0; index[v] >= 0 && i < roadmap.degree(v); i++) {
+                    if (index[roadmap.neighbor(v, i)] >= 0) {
+                        buffer.putInt(index[roadmap.neighbor(v, i)]);
+                    }
+                }
+            }
+            buffer.force();
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Can not write " + file);
+            }
+        }
+    }
+
+    private static long size(int count, int edges) {
+        return HEADER_BYTES + 8L * 3 * count + 4L * (count + 1) + 4L * edges;
+    }
+}
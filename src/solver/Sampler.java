@@ -0,0 +1,55 @@
+package solver;
+
+/**
+ * A source of sample points in the unit cube, one coordinate in [0, 1) per dimension.
+ * A sampler is used by one thread at a time, split gives another thread a sampler of its own.
+ */
+public interface Sampler {
+
+    /**
+     * @return the number of coordinates of every sample
+     */
+    int getDimension();
+
+    /**
+     * Get the next sample
+     * @param point filled with the coordinates of the sample, its length must not exceed the dimension
+     */
+    void next(double[] point);
+
+    /**
+     * Get a sampler for another thread. It does not share state with this sampler, and the samplers
+     * split off one sampler are the same whenever the splits happen in the same order.
+     * @return a new sampler of the same kind and dimension
+     */
+    Sampler split();
+
+    /**
+     * Get the name of the samples, used in the key of a cached roadmap. Samplers with the same name
+     * give the same samples.
+     * @return the name, the class name unless the samples depend on more than the kind of sampler
+     */
+    default String getName() {
+        return getClass().getName();
+    }
+
+    /**
+     * Create a sampler by name
+     * @param name "random", "halton" or "sobol"
+     * @param dimension the number of coordinates of every sample
+     * @param seed the seed of a random sampler, the sequences do not use it
+     * @return the sampler
+     */
+    static Sampler create(String name, int dimension, long seed) {
+        switch (name) {
+            case "random":
+                return new RandomSampler(dimension, seed);
+            case "halton":
+                return new HaltonSampler(dimension);
+            case "sobol":
+                return new SobolSampler(dimension);
+            default:
+                throw new IllegalArgumentException("Unknown sampler: " + name);
+        }
+    }
+}
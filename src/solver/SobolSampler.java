@@ -0,0 +1,94 @@
+package solver;
+
+/**
+ * The Sobol sequence with the Joe-Kuo direction numbers, in Gray code order.
+ * Every block of 2^m consecutive samples spreads evenly over the unit cube.
+ * A split sampler continues the sequence from a block far ahead, so every sampler gives its own samples.
+ */
+public class SobolSampler implements Sampler {
+    private static final int BITS = 32;
+    //degree s, coefficients a and initial numbers m of the primitive polynomial of dimensions 2 and up
+    private static final int[][] POLYNOMIALS = {
+            {1, 0, 1},
+            {2, 1, 1, 3},
+            {3, 1, 1, 3, 1},
+            {3, 2, 1, 1, 1},
+    };
+    //samples in the block of each sampler split off
+    private static final long BLOCK = 1L << 24;
+
+    private int dimension;
+    //direction numbers of every dimension
+    private int[][] directions;
+    //index of the next sample, the first one is 1 as sample 0 is the origin
+    private long index;
+    //number of samplers split off this one so far
+    private int splits = 0;
+
+    /**
+     * @param dimension the number of coordinates of every sample, at most 5
+     */
+    public SobolSampler(int dimension) {
+        this(dimension, directionNumbers(dimension), 1);
+    }
+
+    private SobolSampler(int dimension, int[][] directions, long index) {
+        this.dimension = dimension;
+        this.directions = directions;
+        this.index = index;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public void next(double[] point) {
+        long gray = index ^ (index >>> 1);
+        for (int i = 0; i < point.length; i++) {
+            int x = 0;
+            for (int bit = 0; bit < BITS; bit++) {
+                if ((gray >>> bit & 1) != 0) {
+                    x ^= directions[i][bit];
+                }
+            }
+            point[i] = (x & 0xffffffffL) / 4294967296.0;
+        }
+        index++;
+    }
+
+    @Override
+    public Sampler split() {
+        splits++;
+        return new SobolSampler(dimension, directions, index + splits * BLOCK);
+    }
+
+    private static int[][] directionNumbers(int dimension) {
+        if (dimension < 1 || dimension > POLYNOMIALS.length + 1) {
+            throw new IllegalArgumentException("Sobol dimension must be 1 to " + (POLYNOMIALS.length + 1));
+        }
+        int[][] directions = new int[dimension][BITS];
+        for (int bit = 0; bit < BITS; bit++) {
+            directions[0][bit] = 1 << (BITS - 1 - bit);
+        }
+        for (int d = 1; d < dimension; d++) {
+            int[] polynomial = POLYNOMIALS[d - 1];
+            int s = polynomial[0];
+            int a = polynomial[1];
+            int[] v = directions[d];
+            for (int bit = 0; bit < s; bit++) {
+                v[bit] = polynomial[2 + bit] << (BITS - 1 - bit);
+            }
+            for (int bit = s; bit < BITS; bit++) {
+                v[bit] = v[bit - s] ^ (v[bit - s] >>> s);
+                for (int j = 1; j < s; j++) {
+                    if ((a >>> (s - 1 - j) & 1) != 0) {
+                        v[bit] ^= v[bit - j];
+                    }
+                }
+            }
+        }
+        return directions;
+    }
+}
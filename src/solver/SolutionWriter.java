@@ -9,6 +9,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -30,23 +31,40 @@ public class SolutionWriter {
      * @throws IOException
      */
     public void writePath(List<State> statePath, String fileName) throws IOException {
-        BufferedWriter bw = null;
+        writePaths(Collections.singletonList(statePath), fileName);
+    }
+
+    /**
+     * Write the state paths one after another to given file name as one path.
+     * The states are read one at a time as they are written, so paths that compute
+     * their states on demand, like StepPath, are never held in memory in full.
+     * @param statePaths the parts of the path in order
+     * @param fileName the file name that we write to
+     * @throws IOException
+     */
+    public void writePaths(List<? extends List<State>> statePaths, String fileName) throws IOException {
         File outputFile = new File(fileName);
         if(!outputFile.exists()) {
             outputFile.createNewFile();
         }
-        bw = new BufferedWriter(new FileWriter(outputFile, false));
-        //write steps in first line
-        bw.write(statePath.size()+"");
-        bw.newLine();
-        //write every state steps
-        for (State s : statePath) {
-            bw.write(s.toString());
+        int steps = 0;
+        for (List<State> statePath : statePaths) {
+            steps += statePath.size();
+        }
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile, false))) {
+            //write steps in first line
+            bw.write(steps+"");
             bw.newLine();
+            //write every state steps
+            for (List<State> statePath : statePaths) {
+                for (State s : statePath) {
+                    bw.write(s.toString());
+                    bw.newLine();
+                }
+            }
         }
 
         System.out.println("File Written Successfully");
-        bw.close();
     }
 
 }
@@ -0,0 +1,94 @@
+package solver;
+
+import problem.Box;
+import problem.RobotConfig;
+
+import java.awt.geom.Point2D;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * The states of a robot path broken down into steps of at most 0.001, computed from the
+ * waypoints when they are asked for instead of being stored. Every edge between two waypoints
+ * gives stepsNeeded steps, starting at its first waypoint and stopping short of the next one.
+ * The boxes and moving obstacles stay where they are in the given state.
+ */
+public class StepPath extends AbstractList<State> {
+    private RobotConfig[] waypoints;
+    //index of the first step of each edge, and the number of steps at the end
+    private int[] offsets;
+    private List<Box> boxes;
+    private List<Box> movingObst;
+
+    /**
+     * @param waypoints the robot configs the path goes through
+     * @param s the state holding the boxes and moving obstacles
+     */
+    public StepPath(List<RobotConfig> waypoints, State s) {
+        this.waypoints = waypoints.toArray(new RobotConfig[0]);
+        this.boxes = s.getBoxes();
+        this.movingObst = s.getMovingObst();
+        int edges = Math.max(0, this.waypoints.length - 1);
+        this.offsets = new int[edges + 1];
+        for (int i = 0; i < edges; i++) {
+            offsets[i + 1] = offsets[i] + PRM.stepsNeeded(this.waypoints[i], this.waypoints[i + 1]);
+        }
+    }
+
+    @Override
+    public int size() {
+        return offsets[offsets.length - 1];
+    }
+
+    @Override
+    public State get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Step " + index + " of " + size());
+        }
+        //the last edge starting at or before the step
+        int lo = 0;
+        int hi = offsets.length - 2;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (offsets[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        RobotConfig rc = stepOnEdge(waypoints[lo], waypoints[lo + 1], index - offsets[lo], offsets[lo + 1] - offsets[lo]);
+        return new State(rc, boxes, movingObst);
+    }
+
+    /**
+     * Get step i of n between RobotConfig r1 and RobotConfig r2, rounded to 0.001
+     * @param r1 RobotConfig 1
+     * @param r2 RobotConfig 2
+     * @param i the step, 0 is r1
+     * @param n number of steps
+     * @return the robot config of the step
+     */
+    private static RobotConfig stepOnEdge(RobotConfig r1, RobotConfig r2, int i, int n) {
+        Double x, y, angle;
+        //turn the short way round, like the neighbour distance
+        double angle2 = PRM.nearAngle(r1.getOrientation(), r2.getOrientation());
+
+        if(r1.getPos().getX() < r2.getPos().getX()) {
+            x = r1.getPos().getX() + (i * ((Math.abs(r1.getPos().getX() - r2.getPos().getX())) / n));
+        } else {
+            x = r1.getPos().getX() - (i * ((Math.abs(r1.getPos().getX() - r2.getPos().getX())) / n));
+        }
+
+        if(r1.getPos().getY() < r2.getPos().getY()) {
+            y = r1.getPos().getY() + (i * ((Math.abs(r1.getPos().getY() - r2.getPos().getY())) / n));
+        } else {
+            y = r1.getPos().getY() - (i * ((Math.abs(r1.getPos().getY() - r2.getPos().getY())) / n));
+        }
+        if(r1.getOrientation() < angle2) {
+            angle = r1.getOrientation() + (i * ((Math.abs(r1.getOrientation() - angle2)) / n));
+        } else {
+            angle = r1.getOrientation() - (i * ((Math.abs(r1.getOrientation() - angle2)) / n));
+        }
+        return new RobotConfig(new Point2D.Double(FixedPoint.format3(x), FixedPoint.format3(y)), FixedPoint.format3(angle));
+    }
+}
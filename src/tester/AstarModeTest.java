@@ -0,0 +1,178 @@
+package tester;
+
+import problem.Box;
+import problem.ProblemSpec;
+import problem.RobotConfig;
+import solver.Astar;
+import solver.State;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Runs every Astar search mode on the sample problems and checks the box paths they find.
+ * Every path must move only its own box, push it from a coupled robot, keep the robot and boxes out of
+ * collision and end with the box at its goal, and every mode must solve the same boxes as ASTAR.
+ * A box path moves the robot to another side of the box in the step of the first push from that side,
+ * so only the pushes that keep the side must move the robot with the box.
+ * The ASTAR output of input1.txt and input2.txt must also be the same as the baseline search gave,
+ * compared by the CRC-32 of the lines AstarTest prints.
+ * Every mode is also run with the boxes planned concurrently. Its paths must pass the same checks and solve
+ * as many boxes, and where no box fails its output must be the same as the sequential run.
+ * Usage: AstarModeTest, run from the directory holding the problem files
+ */
+public class AstarModeTest {
+    private static final String[] FILES = {"input1.txt", "input2.txt", "input3.txt"};
+    // CRC-32 of the AstarTest output of the baseline search for each file, 0 where there is none to compare.
+    // The baseline read the static obstacles of input3.txt as squares, so it found paths through its wall.
+    private static final long[] BASELINE_CRCS = {0x2a5e3837L, 0x35f78627L, 0};
+    private static final Astar.Mode[] MODES = {Astar.Mode.ASTAR, Astar.Mode.JPS, Astar.Mode.HIERARCHICAL,
+            Astar.Mode.BIDIRECTIONAL};
+
+    public static void main(String[] args) {
+        int failures = 0;
+        for (int f = 0; f < FILES.length; f++) {
+            ProblemSpec ps = new ProblemSpec();
+            try {
+                ps.loadProblem(FILES[f]);
+            } catch (IOException e) {
+                System.out.println("FAILED: Invalid problem file " + FILES[f]);
+                failures++;
+                continue;
+            }
+            Tester tester = new Tester(ps);
+            int solved = -1;
+            for (Astar.Mode mode : MODES) {
+                List<List<State>> paths = new Astar(ps, mode).getStateList();
+                String name = FILES[f] + " " + mode;
+                String error = checkPaths(tester, ps, paths);
+                if (error == null && solved >= 0 && paths.size() != solved) {
+                    error = "solved " + paths.size() + " boxes, ASTAR solved " + solved;
+                }
+                if (error == null && mode == Astar.Mode.ASTAR) {
+                    solved = paths.size();
+                    if (BASELINE_CRCS[f] != 0 && crc(paths) != BASELINE_CRCS[f]) {
+                        error = "output differs from the baseline search";
+                    }
+                }
+                if (error != null) {
+                    System.out.println("FAILED: " + name + ": " + error);
+                    failures++;
+                } else {
+                    System.out.println(name + ": " + paths.size() + " box paths passed");
+                }
+
+                List<List<State>> concurrentPaths = new Astar(ps, mode, true).getStateList();
+                name += " concurrent";
+                error = checkPaths(tester, ps, concurrentPaths);
+                if (error == null && concurrentPaths.size() != paths.size()) {
+                    error = "solved " + concurrentPaths.size() + " boxes, sequential solved " + paths.size();
+                }
+                if (error == null && paths.size() == ps.getMovingBoxes().size()
+                        && crc(concurrentPaths) != crc(paths)) {
+                    error = "output differs from the sequential run";
+                }
+                if (error != null) {
+                    System.out.println("FAILED: " + name + ": " + error);
+                    failures++;
+                } else {
+                    System.out.println(name + ": " + concurrentPaths.size() + " box paths passed");
+                }
+            }
+        }
+        System.out.println(failures == 0 ? "Astar modes: all checks passed" : "Astar modes: " + failures + " checks failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Check the box paths of a problem, planned in order from the initial state
+     * @return a description of what is wrong with the paths, null if they are valid
+     */
+    private static String checkPaths(Tester tester, ProblemSpec ps, List<List<State>> paths) {
+        List<Box> previous = ps.getMovingBoxes();
+        for (int p = 0; p < paths.size(); p++) {
+            List<State> path = paths.get(p);
+            if (path.isEmpty()) {
+                return "path " + p + " is empty";
+            }
+            if (!samePositions(previous, path.get(0).getBoxes())) {
+                return "path " + p + " does not start where the boxes were left";
+            }
+            int box = -1;
+            int side = -1;
+            for (int i = 0; i < path.size(); i++) {
+                State state = path.get(i);
+                List<Box> objects = new ArrayList<>(state.getBoxes());
+                objects.addAll(state.getMovingObst());
+                if (!tester.hasCollision(state.getRobot(), objects) || !tester.testGapSliding(state.getRobot(), objects)) {
+                    return "path " + p + " collides at step " + i;
+                }
+                if (i == 0) {
+                    continue;
+                }
+                State last = path.get(i - 1);
+                List<Box> lastObjects = new ArrayList<>(last.getBoxes());
+                lastObjects.addAll(last.getMovingObst());
+                int pushed = tester.hasPushedBox(lastObjects, objects);
+                if (pushed == -1) {
+                    continue;
+                }
+                if (pushed == -2 || (box >= 0 && pushed != box) || pushed >= state.getBoxes().size()) {
+                    return "path " + p + " moves another object at step " + i;
+                }
+                box = pushed;
+                Point2D from = lastObjects.get(pushed).getPos();
+                Point2D to = objects.get(pushed).getPos();
+                RobotConfig robot = state.getRobot();
+                int direction = tester.isCoupled(robot, objects.get(pushed));
+                // after a change of side the robot is taken to have pushed from where it ends up
+                RobotConfig lastRobot = direction == side ? last.getRobot() : new RobotConfig(new Point2D.Double(
+                        robot.getPos().getX() - to.getX() + from.getX(), robot.getPos().getY() - to.getY() + from.getY()),
+                        robot.getOrientation());
+                side = direction;
+                if (!tester.testPushValidity(direction, lastRobot, robot, lastObjects.get(pushed), objects.get(pushed))
+                        || from.distance(to) > Tester.MAX_BASE_STEP + Tester.MAX_ERROR) {
+                    return "path " + p + " has an invalid push at step " + i;
+                }
+            }
+            previous = path.get(path.size() - 1).getBoxes();
+            if (box >= 0 && previous.get(box).getPos().distance(ps.getMovingBoxEndPositions().get(box))
+                    > Tester.MAX_ERROR) {
+                return "path " + p + " does not end at the goal of box " + box;
+            }
+        }
+        return null;
+    }
+
+    private static boolean samePositions(List<Box> a, List<Box> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).getPos().distance(b.get(i).getPos()) > Tester.MAX_ERROR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the CRC-32 of the lines AstarTest prints for the box paths, each ended by a line feed
+     */
+    private static long crc(List<List<State>> paths) {
+        CRC32 crc = new CRC32();
+        for (int p = 0; p < paths.size(); p++) {
+            crc.update((p + "\n").getBytes(StandardCharsets.UTF_8));
+            for (State state : paths.get(p)) {
+                crc.update((state + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return crc.getValue();
+    }
+}
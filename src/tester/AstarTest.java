@@ -6,25 +6,29 @@ import solver.State;
 
 import java.awt.geom.Point2D;
 import java.io.IOException;
-import java.util.LinkedList;
 import java.util.List;
 
+/**
+ * Prints the box path states Astar finds. Diff the output of two builds to check that a change
+ * to the search keeps its results, e.g. for input1.txt and input2.txt.
+ * Usage: AstarTest [problem file] [mode], input2.txt and ASTAR by default
+ */
 public class AstarTest {
     public static void main(String[] args) {
         // Configure here //
         ProblemSpec ps = new ProblemSpec();
         try {
-            ps.loadProblem("input2.txt");
+            ps.loadProblem(args.length > 0 ? args[0] : "input2.txt");
         } catch (IOException ioe) {
             System.out.println("FAILED: Invalid problem file");
             System.out.println(ioe.getMessage());
         }
         // End Configuration //
 
-        Astar astar = new Astar(ps);
-        List<LinkedList<State>> listOfStates = astar.getStateList();
+        Astar astar = new Astar(ps, args.length > 1 ? Astar.Mode.valueOf(args[1].toUpperCase()) : Astar.Mode.ASTAR);
+        List<List<State>> listOfStates = astar.getStateList();
         int counter = 0;
-        for (LinkedList<State> stateList : listOfStates) {
+        for (List<State> stateList : listOfStates) {
             System.out.println(counter);
             for (State state : stateList) {
                 System.out.println(state.toString());
@@ -0,0 +1,273 @@
+package tester;
+
+import problem.Box;
+import problem.ProblemSpec;
+import problem.RobotConfig;
+import solver.Astar;
+import solver.PRM;
+import solver.RandomSampler;
+import solver.Roadmap;
+import solver.Sampler;
+import solver.State;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds seeded roadmaps on the sample problems, with the edges checked eagerly and with Lazy PRM,
+ * and queries them from the initial robot config to the robot config of the first box push, as Agent
+ * does, and between random pairs of vertices. The A* query must find a path with no more steps than
+ * BFS on the same roadmap. A lazy query removes the edges in collision on its path and connects other
+ * vertices in their place, so BFS runs first: the edges of its path are checked and kept for A*. Every path must
+ * start at the queried root, move both ends of the robot at most 0.001 along each axis per step and
+ * never collide. The steps are rounded to 0.001, so a diagonal one moves 0.001 along both axes,
+ * which is over the 0.001 Tester allows.
+ * The rounding can also move a step on a collision free edge up to 0.0005 into a box the edge grazes,
+ * so a step only collides if every config within 0.0005 of it collides.
+ * A path stops one step short of the goal, where the next part of the solution starts,
+ * so that step is checked too.
+ * Each roadmap is also built in parallel from the same samples. It must have the same vertices, each
+ * with the same neighbours, and give paths with as many steps. Run with -XX:ActiveProcessorCount
+ * above 2 on a machine with fewer cores to split the build into several tasks.
+ * Usage: PRMTest, run from the directory holding the problem files
+ */
+public class PRMTest {
+    private static final String[] FILES = {"input1.txt", "input2.txt"};
+    private static final int SEEDS = 5;
+    private static final int SAMPLES = 500;
+    private static final int NEIGHBORS = 10;
+    // random vertex pairs queried on every roadmap
+    private static final int PAIRS = 20;
+    // largest change rounding a step to 0.001 makes to its x, y and angle
+    private static final double ROUNDING = 0.0005;
+
+    public static void main(String[] args) {
+        int failures = 0;
+        for (String file : FILES) {
+            ProblemSpec ps = new ProblemSpec();
+            try {
+                ps.loadProblem(file);
+            } catch (IOException e) {
+                System.out.println("FAILED: Invalid problem file " + file);
+                failures++;
+                continue;
+            }
+            Tester tester = new Tester(ps);
+            RobotConfig init = ps.getInitialRobotConfig();
+            RobotConfig goal = new Astar(ps).getStateList().get(0).get(0).getRobot();
+            List<Box> objects = new ArrayList<>(ps.getMovingBoxes());
+            objects.addAll(ps.getMovingObstacles());
+
+            for (int seed = 0; seed < SEEDS; seed++) {
+                for (boolean lazy : new boolean[] {false, true}) {
+                    String name = file + (lazy ? " lazy" : " eager") + " seed " + seed;
+                    failures += checkRoadmap(name, ps, tester, objects, init, goal, seed, lazy);
+                    failures += checkParallel(name, ps, init, goal, seed, lazy);
+                }
+            }
+        }
+        System.out.println(failures == 0 ? "PRM: all checks passed" : "PRM: " + failures + " checks failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Build a roadmap and check the paths of its queries
+     * @return the number of failed checks
+     */
+    private static int checkRoadmap(String name, ProblemSpec ps, Tester tester, List<Box> objects, RobotConfig init,
+                                    RobotConfig goal, int seed, boolean lazy) {
+        PRM prm = new PRM(ps, new State(ps), SAMPLES, NEIGHBORS, init, goal);
+        prm.setSampler(new RandomSampler(3, seed));
+        prm.setLazy(lazy);
+        Roadmap map = prm.buildMap();
+        List<State> bfs = prm.BFS(map, init, goal);
+        List<State> shortest = prm.shortestPath(map, init, goal);
+        String error = shortest == null ? "no path to the first push"
+                : compareQueries(tester, objects, shortest, bfs, init, goal);
+        Random random = new Random(seed);
+        int shorter = 0;
+        for (int i = 0; error == null && i < PAIRS; i++) {
+            int v = 2 + random.nextInt(map.size() - 2);
+            // a vertex other than v
+            int w = 2 + random.nextInt(map.size() - 3);
+            RobotConfig from = map.getConfig(v);
+            RobotConfig to = map.getConfig(w < v ? w : w + 1);
+            bfs = prm.BFS(map, from, to);
+            shortest = prm.shortestPath(map, from, to);
+            error = compareQueries(tester, objects, shortest, bfs, from, to);
+            if (error == null && shortest != null && shortest.size() < bfs.size()) {
+                shorter++;
+            }
+        }
+        if (error != null) {
+            System.out.println("FAILED: " + name + ": " + error);
+            return 1;
+        }
+        System.out.println(name + ": A* shorter than BFS on " + shorter + " of " + PAIRS + " pairs");
+        return 0;
+    }
+
+    /**
+     * Build a roadmap serially and in parallel from the same samples and compare them
+     * @return the number of failed checks
+     */
+    private static int checkParallel(String name, ProblemSpec ps, RobotConfig init, RobotConfig goal, int seed,
+                                     boolean lazy) {
+        List<Roadmap> maps = new ArrayList<>();
+        List<Integer> steps = new ArrayList<>();
+        for (boolean parallel : new boolean[] {false, true}) {
+            PRM prm = new PRM(ps, new State(ps), SAMPLES, NEIGHBORS, init, goal);
+            prm.setSampler(new SharedSampler(seed));
+            prm.setLazy(lazy);
+            prm.setParallel(parallel);
+            Roadmap map = prm.buildMap();
+            maps.add(map);
+            List<State> path = prm.shortestPath(map, init, goal);
+            steps.add(path == null ? -1 : path.size());
+        }
+        String error = null;
+        if (!describe(maps.get(0)).equals(describe(maps.get(1)))) {
+            error = "the parallel roadmap has other vertices or edges";
+        } else if (!steps.get(0).equals(steps.get(1))) {
+            error = "the parallel path has " + steps.get(1) + " steps, the serial one " + steps.get(0);
+        }
+        if (error != null) {
+            System.out.println("FAILED: " + name + " parallel: " + error);
+            return 1;
+        }
+        System.out.println(name + " parallel: same roadmap as serial");
+        return 0;
+    }
+
+    /**
+     * Describe a roadmap without its vertex ids, which depend on the order the parallel tasks finish in
+     * @return every vertex config with the configs of its neighbours, sorted
+     */
+    private static List<String> describe(Roadmap map) {
+        List<String> vertices = new ArrayList<>();
+        for (int v = 0; v < map.size(); v++) {
+            if (!map.contains(v)) {
+                continue;
+            }
+            List<String> neighbors = new ArrayList<>();
+            for (int i = 0; i < map.degree(v); i++) {
+                neighbors.add(map.getConfig(map.neighbor(v, i)).toString());
+            }
+            Collections.sort(neighbors);
+            vertices.add(map.getConfig(v) + ": " + neighbors);
+        }
+        Collections.sort(vertices);
+        return vertices;
+    }
+
+    /**
+     * Compare the paths A* and BFS found for the same query
+     * @return a description of what is wrong with the paths, null if they are valid and A* is no longer
+     */
+    private static String compareQueries(Tester tester, List<Box> objects, List<State> shortest, List<State> bfs,
+                                         RobotConfig from, RobotConfig to) {
+        if (shortest == null || bfs == null) {
+            return shortest == bfs ? null : "only one of A* and BFS found a path from " + from + "to " + to;
+        }
+        String error = checkPath(tester, objects, shortest, from, to);
+        if (error == null) {
+            error = checkPath(tester, objects, bfs, from, to);
+        }
+        if (error == null && shortest.size() > bfs.size()) {
+            error = "A* path from " + from + "to " + to + "has " + shortest.size() + " steps, BFS path "
+                    + bfs.size();
+        }
+        return error;
+    }
+
+    /**
+     * @return a description of what is wrong with the path, null if it is valid
+     */
+    private static String checkPath(Tester tester, List<Box> objects, List<State> path, RobotConfig init,
+                                    RobotConfig goal) {
+        if (path == null || path.isEmpty()) {
+            return "no path";
+        }
+        if (!samePlace(path.get(0).getRobot(), init)) {
+            return "starts at " + path.get(0).getRobot() + " instead of " + init;
+        }
+        RobotConfig last = null;
+        for (int i = 0; i <= path.size(); i++) {
+            RobotConfig robot = i < path.size() ? path.get(i).getRobot() : goal;
+            if (last != null && (!isAxisStep(tester.getPoint1(last), tester.getPoint1(robot))
+                    || !isAxisStep(tester.getPoint2(last), tester.getPoint2(robot)))) {
+                return "step " + i + " from " + last + "is over 0.001";
+            }
+            if (!isFreeWithinRounding(tester, robot, objects)) {
+                return "collision at step " + i + " " + robot;
+            }
+            last = robot;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the robot or a config at most ROUNDING away from it in x, y and angle is collision free
+     */
+    private static boolean isFreeWithinRounding(Tester tester, RobotConfig robot, List<Box> objects) {
+        if (tester.hasCollision(robot, objects)) {
+            return true;
+        }
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int da = -1; da <= 1; da++) {
+                    RobotConfig near = new RobotConfig(new Point2D.Double(robot.getPos().getX() + dx * ROUNDING,
+                            robot.getPos().getY() + dy * ROUNDING), robot.getOrientation() + da * ROUNDING);
+                    if (tester.hasCollision(near, objects)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAxisStep(Point2D from, Point2D to) {
+        return Math.abs(to.getX() - from.getX()) <= Tester.MAX_BASE_STEP + Tester.MAX_ERROR
+                && Math.abs(to.getY() - from.getY()) <= Tester.MAX_BASE_STEP + Tester.MAX_ERROR;
+    }
+
+    private static boolean samePlace(RobotConfig a, RobotConfig b) {
+        return a.getPos().distance(b.getPos()) <= Tester.MAX_ERROR
+                && Math.abs(a.getOrientation() - b.getOrientation()) <= Tester.MAX_ERROR;
+    }
+
+    /**
+     * A seeded random sampler whose splits all draw from its own stream, one sample at a time.
+     * The sampling tasks of a parallel build then take the samples of the stream in turn until they have
+     * their share of free ones, so together they keep the first n free samples, as a serial build does.
+     */
+    private static class SharedSampler implements Sampler {
+        private Sampler random;
+
+        private SharedSampler(long seed) {
+            random = new RandomSampler(3, seed);
+        }
+
+        @Override
+        public int getDimension() {
+            return random.getDimension();
+        }
+
+        @Override
+        public synchronized void next(double[] point) {
+            random.next(point);
+        }
+
+        @Override
+        public Sampler split() {
+            return this;
+        }
+    }
+}
@@ -3,15 +3,29 @@ package tester;
 import problem.Box;
 import problem.MovingBox;
 import problem.MovingObstacle;
+import problem.ProblemSpec;
 import problem.StaticObstacle;
 import solver.RRT;
+import solver.RandomSampler;
 
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
+/**
+ * Prints the path of a box RRT finds on a small map, then checks the paths of the biased RRT
+ * (goal bias, free cells and frontier bias) for every box of input1.txt and input3.txt.
+ * A path must start at the box, end at its goal, move 0.001 along one axis per step, stay in the
+ * workspace and never overlap an obstacle. The static obstacles of input3.txt wall off the goals,
+ * so no path is expected there.
+ */
 public class RRTTest {
+    // seeds of the biased runs checked on every box
+    private static final int SEEDS = 3;
+    private static final double TOLERANCE = 1e-9;
 
 
     public static void main(String[] args) {
@@ -58,5 +72,104 @@ public class RRTTest {
         } else {
             System.out.println("path is null");
         }
+
+        int failures = checkBiasedPaths("input1.txt", true) + checkBiasedPaths("input3.txt", false);
+        System.out.println(failures == 0 ? "Biased RRT: all checks passed" : "Biased RRT: " + failures + " checks failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plan every box of a problem with the biased RRT and check the paths
+     * @param file the problem file
+     * @param solvable true if every box has a path to its goal
+     * @return the number of failed checks
+     */
+    private static int checkBiasedPaths(String file, boolean solvable) {
+        ProblemSpec ps = new ProblemSpec();
+        try {
+            ps.loadProblem(file);
+        } catch (IOException e) {
+            System.out.println("FAILED: Invalid problem file " + file);
+            return 1;
+        }
+        List<MovingObstacle> movingObstacles = new ArrayList<>();
+        for (Box b : ps.getMovingObstacles()) {
+            movingObstacles.add((MovingObstacle) b);
+        }
+
+        int failures = 0;
+        for (int i = 0; i < ps.getMovingBoxes().size(); i++) {
+            Box box = ps.getMovingBoxes().get(i);
+            Point2D goal = ps.getMovingBoxEndPositions().get(i);
+            List<MovingBox> otherBoxes = new ArrayList<>();
+            for (Box b : ps.getMovingBoxes()) {
+                if (b != box) {
+                    otherBoxes.add((MovingBox) b);
+                }
+            }
+            List<Rectangle2D> obstacles = new ArrayList<>();
+            for (Box b : otherBoxes) {
+                obstacles.add(b.getRect());
+            }
+            for (Box b : movingObstacles) {
+                obstacles.add(b.getRect());
+            }
+            for (StaticObstacle o : ps.getStaticObstacles()) {
+                obstacles.add(o.getRect());
+            }
+
+            for (int seed = 0; seed < SEEDS; seed++) {
+                RRT rrt = new RRT(box, goal, otherBoxes, movingObstacles, ps.getStaticObstacles(),
+                        new RandomSampler(3, seed), 1, 0, 0.3, true, 0.2);
+                String error = checkPath(rrt.getCoordPath(), box, goal, obstacles, solvable);
+                if (error != null) {
+                    System.out.println("FAILED: " + file + " box " + i + " seed " + seed + ": " + error);
+                    failures++;
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return a description of what is wrong with the path, null if it is valid
+     */
+    private static String checkPath(List<Point2D> path, Box box, Point2D goal, List<Rectangle2D> obstacles,
+                                    boolean solvable) {
+        if (!solvable) {
+            return path == null ? null : "found a path through a wall";
+        }
+        if (path == null) {
+            return "no path";
+        }
+        if (path.get(0).distance(box.getPos()) > TOLERANCE) {
+            return "starts at " + path.get(0) + " instead of " + box.getPos();
+        }
+        if (path.get(path.size() - 1).distance(goal) > TOLERANCE) {
+            return "ends at " + path.get(path.size() - 1) + " instead of " + goal;
+        }
+        double width = box.getWidth();
+        for (int j = 0; j < path.size(); j++) {
+            Point2D p = path.get(j);
+            if (j > 0) {
+                double dx = Math.abs(p.getX() - path.get(j - 1).getX());
+                double dy = Math.abs(p.getY() - path.get(j - 1).getY());
+                if (Math.abs(dx + dy - Tester.MAX_BASE_STEP) > TOLERANCE || Math.min(dx, dy) > TOLERANCE) {
+                    return "step " + j + " is not one push";
+                }
+            }
+            if (p.getX() < -TOLERANCE || p.getY() < -TOLERANCE
+                    || p.getX() + width > 1 + TOLERANCE || p.getY() + width > 1 + TOLERANCE) {
+                return "outside the workspace at step " + j + " " + p;
+            }
+            for (Rectangle2D obstacle : obstacles) {
+                if (obstacle.intersects(p.getX(), p.getY(), width, width)) {
+                    return "collision at step " + j + " " + p;
+                }
+            }
+        }
+        return null;
     }
-}
\ No newline at end of file
+}
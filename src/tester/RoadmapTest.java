@@ -0,0 +1,215 @@
+package tester;
+
+import solver.Roadmap;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the flat array roadmap against a list of neighbour lists kept next to it.
+ * Random vertices and edges are added and removed, rows are replaced and compacted, and after every
+ * change each vertex must have the same neighbours in the same order, the same checked flags and
+ * the same edge count as the lists. A roadmap built from compressed sparse rows must read them back.
+ * Usage: RoadmapTest
+ */
+public class RoadmapTest {
+    private static final int SEED = 20;
+    private static final int OPERATIONS = 20000;
+    private static final int MAX_VERTICES = 200;
+
+    public static void main(String[] args) {
+        int failures = checkRandomChanges() + checkSparseRows();
+        System.out.println(failures == 0 ? "Roadmap: all checks passed" : "Roadmap: " + failures + " checks failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Make random changes to a roadmap and to the lists, comparing them after every change
+     * @return the number of failed checks
+     */
+    private static int checkRandomChanges() {
+        Random random = new Random(SEED);
+        Roadmap roadmap = new Roadmap();
+        // neighbours and checked flags of every id, null for a removed vertex
+        List<List<Integer>> rows = new ArrayList<>();
+        List<List<Boolean>> flags = new ArrayList<>();
+        for (int op = 0; op < OPERATIONS; op++) {
+            int kind = random.nextInt(10);
+            int v = rows.isEmpty() ? -1 : random.nextInt(rows.size());
+            String name;
+            if (v < 0 || rows.get(v) == null || (kind == 0 && rows.size() < MAX_VERTICES)) {
+                name = "addVertex";
+                int id = roadmap.addVertex(random.nextDouble(), random.nextDouble(), random.nextDouble() * Math.PI);
+                // ids of removed vertices below the highest one are not used again
+                if (id != rows.size()) {
+                    System.out.println("FAILED: addVertex gave id " + id + " instead of " + rows.size());
+                    return 1;
+                }
+                rows.add(new ArrayList<>());
+                flags.add(new ArrayList<>());
+            } else if (kind <= 4) {
+                name = "addEdge";
+                int w = random.nextInt(rows.size());
+                roadmap.addEdge(v, w);
+                rows.get(v).add(w);
+                flags.get(v).add(false);
+            } else if (kind == 5) {
+                name = "removeEdge";
+                List<Integer> row = rows.get(v);
+                int w = row.isEmpty() || random.nextBoolean() ? random.nextInt(rows.size())
+                        : row.get(random.nextInt(row.size()));
+                int i = row.indexOf(w);
+                if (roadmap.removeEdge(v, w) != (i >= 0)) {
+                    System.out.println("FAILED: removeEdge of " + v + " to " + w + " gave the wrong result");
+                    return 1;
+                }
+                if (i >= 0) {
+                    row.remove(i);
+                    flags.get(v).remove(i);
+                }
+            } else if (kind == 6) {
+                name = "setChecked";
+                if (!rows.get(v).isEmpty()) {
+                    int i = random.nextInt(rows.get(v).size());
+                    roadmap.setChecked(v, i);
+                    flags.get(v).set(i, true);
+                }
+            } else if (kind == 7) {
+                name = "setNeighbors";
+                int count = random.nextInt(12);
+                int[] neighbors = new int[count + 3];
+                List<Integer> row = new ArrayList<>();
+                List<Boolean> rowFlags = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    int w = random.nextInt(rows.size());
+                    neighbors[i] = w;
+                    int old = rows.get(v).indexOf(w);
+                    row.add(w);
+                    rowFlags.add(old >= 0 && flags.get(v).get(old));
+                }
+                roadmap.setNeighbors(v, neighbors, count);
+                rows.set(v, row);
+                flags.set(v, rowFlags);
+            } else if (kind == 8) {
+                name = "removeEdgesTo";
+                BitSet dropped = new BitSet();
+                for (int i = 0; i < 3; i++) {
+                    dropped.set(random.nextInt(rows.size()));
+                }
+                int count = 0;
+                for (int i = rows.get(v).size() - 1; i >= 0; i--) {
+                    if (dropped.get(rows.get(v).get(i))) {
+                        rows.get(v).remove(i);
+                        flags.get(v).remove(i);
+                        count++;
+                    }
+                }
+                if (roadmap.removeEdgesTo(v, dropped) != count) {
+                    System.out.println("FAILED: removeEdgesTo of " + v + " removed the wrong number of edges");
+                    return 1;
+                }
+            } else if (random.nextInt(4) == 0) {
+                name = "compact";
+                roadmap.compact();
+            } else {
+                name = "removeVertex";
+                roadmap.removeVertex(v);
+                rows.set(v, null);
+                flags.set(v, null);
+                while (!rows.isEmpty() && rows.get(rows.size() - 1) == null) {
+                    rows.remove(rows.size() - 1);
+                    flags.remove(flags.size() - 1);
+                }
+            }
+            String error = compare(roadmap, rows, flags);
+            if (error != null) {
+                System.out.println("FAILED: after " + name + " (operation " + op + "): " + error);
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Build a roadmap from compressed sparse rows and read them back
+     * @return the number of failed checks
+     */
+    private static int checkSparseRows() {
+        double[] xs = {0.1, 0.2, 0.3, 0.4};
+        double[] ys = {0.5, 0.6, 0.7, 0.8};
+        double[] angles = {0, 1, 2, 3};
+        int[] offsets = {0, 2, 2, 5, 6};
+        int[] targets = {1, 2, 0, 3, 1, 2};
+        Roadmap roadmap = new Roadmap(xs, ys, angles, offsets, targets);
+        List<List<Integer>> rows = new ArrayList<>();
+        List<List<Boolean>> flags = new ArrayList<>();
+        for (int v = 0; v < xs.length; v++) {
+            List<Integer> row = new ArrayList<>();
+            List<Boolean> rowFlags = new ArrayList<>();
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                row.add(targets[i]);
+                rowFlags.add(false);
+            }
+            rows.add(row);
+            flags.add(rowFlags);
+        }
+        String error = compare(roadmap, rows, flags);
+        for (int v = 0; error == null && v < xs.length; v++) {
+            if (roadmap.getX(v) != xs[v] || roadmap.getY(v) != ys[v] || roadmap.getAngle(v) != angles[v]) {
+                error = "vertex " + v + " has the wrong config";
+            }
+        }
+        // a full row must move to take another edge
+        roadmap.addEdge(0, 3);
+        rows.get(0).add(3);
+        flags.get(0).add(false);
+        if (error == null) {
+            error = compare(roadmap, rows, flags);
+        }
+        if (error != null) {
+            System.out.println("FAILED: sparse rows: " + error);
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @return a description of the first difference between the roadmap and the lists, null if there is none
+     */
+    private static String compare(Roadmap roadmap, List<List<Integer>> rows, List<List<Boolean>> flags) {
+        if (roadmap.size() != rows.size()) {
+            return "size " + roadmap.size() + " instead of " + rows.size();
+        }
+        int edges = 0;
+        for (int v = 0; v < rows.size(); v++) {
+            List<Integer> row = rows.get(v);
+            if (roadmap.contains(v) != (row != null)) {
+                return "vertex " + v + (row == null ? " was not removed" : " is missing");
+            }
+            if (row == null) {
+                continue;
+            }
+            if (roadmap.degree(v) != row.size()) {
+                return "vertex " + v + " has " + roadmap.degree(v) + " neighbours instead of " + row.size();
+            }
+            for (int i = 0; i < row.size(); i++) {
+                if (roadmap.neighbor(v, i) != row.get(i)) {
+                    return "neighbour " + i + " of vertex " + v + " is " + roadmap.neighbor(v, i)
+                            + " instead of " + row.get(i);
+                }
+                if (roadmap.isChecked(v, i) != flags.get(v).get(i)) {
+                    return "edge " + i + " of vertex " + v + " has the wrong checked flag";
+                }
+            }
+            edges += row.size();
+        }
+        if (roadmap.edgeCount() != edges) {
+            return "edge count " + roadmap.edgeCount() + " instead of " + edges;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,104 @@
+package tester;
+
+import solver.HaltonSampler;
+import solver.RandomSampler;
+import solver.Sampler;
+import solver.SobolSampler;
+
+import java.util.Arrays;
+
+/**
+ * Checks the first samples of the Halton and Sobol samplers against the published sequences, and that
+ * every sampler stays in the unit cube and gives the same samples again for the same seed and splits.
+ * The Halton points use the bases 2, 3 and 5 from sample 1. The Sobol points are the ones the
+ * Joe-Kuo generator prints for 3 dimensions, after the origin.
+ * Usage: SamplerTest
+ */
+public class SamplerTest {
+    private static final double[][] HALTON = {
+            {1 / 2.0, 1 / 3.0, 1 / 5.0},
+            {1 / 4.0, 2 / 3.0, 2 / 5.0},
+            {3 / 4.0, 1 / 9.0, 3 / 5.0},
+            {1 / 8.0, 4 / 9.0, 4 / 5.0},
+            {5 / 8.0, 7 / 9.0, 1 / 25.0},
+            {3 / 8.0, 2 / 9.0, 6 / 25.0},
+            {7 / 8.0, 5 / 9.0, 11 / 25.0},
+    };
+    private static final double[][] SOBOL = {
+            {0.5, 0.5, 0.5},
+            {0.75, 0.25, 0.25},
+            {0.25, 0.75, 0.75},
+            {0.375, 0.375, 0.625},
+            {0.875, 0.875, 0.125},
+            {0.625, 0.125, 0.875},
+            {0.125, 0.625, 0.375},
+            {0.1875, 0.3125, 0.9375},
+            {0.6875, 0.8125, 0.4375},
+    };
+    private static final int SAMPLES = 100000;
+    private static final double TOLERANCE = 1e-12;
+
+    public static void main(String[] args) {
+        int failures = 0;
+        failures += checkFirstSamples("halton", new HaltonSampler(3), HALTON);
+        failures += checkFirstSamples("sobol", new SobolSampler(3), SOBOL);
+        for (String name : new String[] {"random", "halton", "sobol"}) {
+            failures += checkRepeatable(name);
+        }
+        System.out.println(failures == 0 ? "Samplers: all checks passed" : "Samplers: " + failures + " checks failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the number of failed checks
+     */
+    private static int checkFirstSamples(String name, Sampler sampler, double[][] expected) {
+        double[] point = new double[3];
+        for (int i = 0; i < expected.length; i++) {
+            sampler.next(point);
+            for (int d = 0; d < point.length; d++) {
+                if (Math.abs(point[d] - expected[i][d]) > TOLERANCE) {
+                    System.out.println("FAILED: " + name + " sample " + (i + 1) + " is " + Arrays.toString(point)
+                            + " instead of " + Arrays.toString(expected[i]));
+                    return 1;
+                }
+            }
+        }
+        System.out.println(name + ": first " + expected.length + " samples passed");
+        return 0;
+    }
+
+    /**
+     * Draw samples from two samplers made the same way, splitting both in the same places
+     * @return the number of failed checks
+     */
+    private static int checkRepeatable(String name) {
+        Sampler a = Sampler.create(name, 3, 17);
+        Sampler b = Sampler.create(name, 3, 17);
+        double[] p = new double[3];
+        double[] q = new double[3];
+        for (int i = 0; i < SAMPLES; i++) {
+            if (i % 10000 == 0) {
+                a = a.split();
+                b = b.split();
+            }
+            a.next(p);
+            b.next(q);
+            if (!Arrays.equals(p, q)) {
+                System.out.println("FAILED: " + name + " sample " + i + " differs between runs");
+                return 1;
+            }
+            for (double x : p) {
+                if (!(x >= 0 && x < 1)) {
+                    System.out.println("FAILED: " + name + " sample " + i + " " + Arrays.toString(p)
+                            + " is outside the unit cube");
+                    return 1;
+                }
+            }
+        }
+        System.out.println(name + ": " + SAMPLES + " samples repeatable and in the unit cube");
+        return 0;
+    }
+}